@@ -63,6 +63,9 @@ android {
 }
 
 dependencies {
+    // Cloud communication
+    implementation(project(":communicationLib"))
+
     // AndroidX & Core
     implementation(libs.androidx.core.ktx)
     implementation(libs.androidx.lifecycle.runtime.ktx)
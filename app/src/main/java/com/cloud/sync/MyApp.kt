@@ -3,7 +3,12 @@ package com.cloud.sync
 import android.app.Application
 import androidx.hilt.work.HiltWorkerFactory
 import androidx.work.Configuration
+import com.cloud.communication.cryto.FileUploader
+import com.cloud.communication.cryto.SessionManager
+import com.cloud.sync.data.local.secure.SessionStorage
+import com.cloud.sync.manager.UploadedHashRecorder
 import dagger.hilt.android.HiltAndroidApp
+import java.io.File
 import javax.inject.Inject
 
 @HiltAndroidApp
@@ -12,6 +17,12 @@ class MyApp : Application(), Configuration.Provider {
     @Inject
     lateinit var workerFactory: HiltWorkerFactory
 
+    @Inject
+    lateinit var sessionStorage: SessionStorage
+
+    @Inject
+    lateinit var uploadedHashRecorder: UploadedHashRecorder
+
     override val workManagerConfiguration: Configuration
         get() = Configuration.Builder()
             .setWorkerFactory(workerFactory)
@@ -24,5 +35,12 @@ class MyApp : Application(), Configuration.Provider {
         // WorkManager.initialize(this, workManagerConfiguration) is now implicitly called
         // because we implement Configuration.Provider. The key is that this now happens
         // AFTER Hilt injection is complete.
+
+        // Restores the paired cloud session, so syncing starts without a new handshake
+        SessionManager.setSessionStore(sessionStorage)
+        // Upload progress kept in app storage, so interrupted uploads resume after a restart
+        FileUploader.setJournalDirectory(File(filesDir, "upload_journal"))
+        // Content counts as uploaded only once the cloud acknowledged its last chunk
+        FileUploader.setListener(uploadedHashRecorder)
     }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import androidx.work.CoroutineWorker
 import androidx.work.WorkerParameters
 import com.cloud.sync.common.config.SyncConfig
 import com.cloud.sync.domain.model.GalleryPhoto
+import com.cloud.sync.domain.repositroy.IContentHashRepository
 import com.cloud.sync.domain.repositroy.IGalleryRepository
 import com.cloud.sync.domain.repositroy.ISyncRepository
 import dagger.assisted.Assisted
@@ -23,7 +24,8 @@ class PhotoSyncWorker @AssistedInject constructor(
     @Assisted workerParams: WorkerParameters,
     private val syncRepository: ISyncRepository,
     private val galleryRepository: IGalleryRepository,
-    private val syncConfig: SyncConfig
+    private val syncConfig: SyncConfig,
+    private val contentHashRepository: IContentHashRepository
 ) : CoroutineWorker(appContext, workerParams) {
 
     override suspend fun doWork(): Result {
@@ -84,9 +86,15 @@ class PhotoSyncWorker @AssistedInject constructor(
         for (photo in photos) {
             ensureActive()
 
-            withContext(Dispatchers.IO) {
-                delay(1000)
-                println("Uploaded ${photo.displayName}")
+            val hash = contentHashRepository.hashOf(photo)
+            if (hash != null && contentHashRepository.isUploaded(hash)) {
+                println("Worker: Skipped duplicate ${photo.displayName}")
+            } else {
+                // Simulated upload, its hash is not recorded as uploaded
+                withContext(Dispatchers.IO) {
+                    delay(1000)
+                    println("Uploaded ${photo.displayName}")
+                }
             }
 
             lastSyncedTimestamp = photo.dateAdded
@@ -0,0 +1,47 @@
+package com.cloud.sync.data.local.hash
+
+import android.content.Context
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import java.io.File
+import javax.inject.Inject
+
+/**
+ * Local index of content hashes that were already uploaded.
+ * Kept as an append-only file with one hex digest per line and loaded into memory on first use.
+ */
+class UploadedHashDataSource @Inject constructor(
+    @ApplicationContext private val context: Context
+) {
+
+    private val file by lazy { File(context.filesDir, "uploaded_hashes.txt") }
+    private val mutex = Mutex()
+    private var hashes: MutableSet<String>? = null
+
+    suspend fun contains(hash: String): Boolean = mutex.withLock {
+        hash in loadedHashes()
+    }
+
+    suspend fun add(hash: String) = mutex.withLock {
+        if (loadedHashes().add(hash)) {
+            withContext(Dispatchers.IO) { file.appendText("$hash\n") }
+        }
+    }
+
+    suspend fun clear() = mutex.withLock {
+        hashes = HashSet()
+        withContext(Dispatchers.IO) { file.delete() }
+    }
+
+    private suspend fun loadedHashes(): MutableSet<String> {
+        hashes?.let { return it }
+        val loaded = withContext(Dispatchers.IO) {
+            if (file.exists()) file.readLines().filterTo(HashSet()) { it.isNotBlank() } else HashSet()
+        }
+        hashes = loaded
+        return loaded
+    }
+}
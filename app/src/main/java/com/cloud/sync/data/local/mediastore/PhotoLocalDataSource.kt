@@ -67,7 +67,8 @@ class PhotoLocalDataSource @Inject constructor(
                     GalleryPhoto(
                         id = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID)),
                         dateAdded = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_ADDED)),
-                        displayName = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DISPLAY_NAME))
+                        displayName = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DISPLAY_NAME)),
+                        path = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA)) ?: ""
                     )
                 )
             }
@@ -0,0 +1,50 @@
+package com.cloud.sync.data.local.secure
+
+import android.content.Context
+import android.content.SharedPreferences
+import androidx.security.crypto.EncryptedSharedPreferences
+import androidx.security.crypto.MasterKey
+import com.cloud.communication.cryto.SessionStore
+import dagger.hilt.android.qualifiers.ApplicationContext
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Keeps the communication library's session snapshots (device key, IV, ids) encrypted,
+ * so a paired cloud is reachable again after process death without a new QR scan.
+ */
+@Singleton
+class SessionStorage @Inject constructor(@ApplicationContext private val context: Context) : SessionStore {
+
+    private val masterKey = MasterKey.Builder(context)
+        .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
+        .build()
+
+    private val sharedPreferences: SharedPreferences = EncryptedSharedPreferences.create(
+        context,
+        "session_shared_prefs",
+        masterKey,
+        EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+        EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
+    )
+
+    override fun save(sessionId: String, snapshot: String) {
+        with(sharedPreferences.edit()) {
+            putString(key(sessionId), snapshot)
+            apply()
+        }
+    }
+
+    override fun load(sessionId: String): String? {
+        return sharedPreferences.getString(key(sessionId), null)
+    }
+
+    override fun remove(sessionId: String) {
+        with(sharedPreferences.edit()) {
+            remove(key(sessionId))
+            apply()
+        }
+    }
+
+    private fun key(sessionId: String) = "session_$sessionId"
+}
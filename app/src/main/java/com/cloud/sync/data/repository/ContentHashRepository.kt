@@ -0,0 +1,41 @@
+package com.cloud.sync.data.repository
+
+import com.cloud.communication.cryto.ConversionUtils.byteArrayToHex
+import com.cloud.communication.cryto.HashUtils.fileHash256
+import com.cloud.sync.data.local.hash.UploadedHashDataSource
+import com.cloud.sync.domain.model.GalleryPhoto
+import com.cloud.sync.domain.repositroy.IContentHashRepository
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.IOException
+import javax.inject.Inject
+
+class ContentHashRepositoryImpl @Inject constructor(
+    private val uploadedHashes: UploadedHashDataSource
+) : IContentHashRepository {
+
+    override suspend fun hashOf(photo: GalleryPhoto): String? {
+        if (photo.path.isEmpty()) return null
+        return hashOf(File(photo.path))
+    }
+
+    override suspend fun hashOf(file: File): String? {
+        return withContext(Dispatchers.IO) {
+            try {
+                byteArrayToHex(fileHash256(file.toPath()))
+            } catch (e: IOException) {
+                println("Could not hash ${file.name}: ${e.message}")
+                null
+            }
+        }
+    }
+
+    override suspend fun isUploaded(hash: String): Boolean {
+        return uploadedHashes.contains(hash)
+    }
+
+    override suspend fun markUploaded(hash: String) {
+        uploadedHashes.add(hash)
+    }
+}
@@ -2,10 +2,13 @@ package com.cloud.sync.di
 
 import com.cloud.sync.data.local.secure.TokenStorage
 import com.cloud.sync.data.local.datastore.SyncPreferencesDataSource
+import com.cloud.sync.data.local.hash.UploadedHashDataSource
 import com.cloud.sync.data.local.mediastore.PhotoLocalDataSource
+import com.cloud.sync.data.repository.ContentHashRepositoryImpl
 import com.cloud.sync.data.repository.GalleryRepositoryImpl
 import com.cloud.sync.data.repository.OauthTokenRepository
 import com.cloud.sync.data.repository.SyncRepositoryImpl
+import com.cloud.sync.domain.repositroy.IContentHashRepository
 import com.cloud.sync.domain.repositroy.IGalleryRepository
 import com.cloud.sync.domain.repositroy.IOauthTokenRepository
 import com.cloud.sync.domain.repositroy.ISyncRepository
@@ -42,4 +45,12 @@ object RepositoryModule {
     ): IOauthTokenRepository {
         return OauthTokenRepository(tokenStorage)
     }
+
+    @Provides
+    @Singleton
+    fun provideContentHashRepository(
+        uploadedHashDataSource: UploadedHashDataSource
+    ): IContentHashRepository {
+        return ContentHashRepositoryImpl(uploadedHashDataSource)
+    }
 }
@@ -6,5 +6,6 @@ package com.cloud.sync.domain.model
 data class GalleryPhoto(
     val id: Long,
     val dateAdded: Long, // Timestamp in seconds
-    val displayName: String
+    val displayName: String,
+    val path: String = "" // Absolute file path, empty when unknown
 )
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.cloud.sync.domain.repositroy
+
+import com.cloud.sync.domain.model.GalleryPhoto
+import java.io.File
+
+/**
+ * Interface for content-hash based deduplication of uploads.
+ * A photo whose content hash was already uploaded is skipped, whatever its name.
+ */
+interface IContentHashRepository {
+    /**
+     * Computes the SHA-256 content hash of a photo by streaming its file.
+     * @param photo: The photo to hash.
+     * @return String?: Hex digest, or null if the file cannot be read.
+     */
+    suspend fun hashOf(photo: GalleryPhoto): String?
+
+    /**
+     * Computes the SHA-256 content hash of a file, e.g. one whose upload just completed.
+     * @return String?: Hex digest, or null if the file cannot be read.
+     */
+    suspend fun hashOf(file: File): String?
+
+    /**
+     * Checks whether content with this hash was already uploaded.
+     */
+    suspend fun isUploaded(hash: String): Boolean
+
+    /**
+     * Records that content with this hash has been uploaded.
+     * Only called once the cloud acknowledged the complete upload, see UploadedHashRecorder.
+     */
+    suspend fun markUploaded(hash: String)
+}
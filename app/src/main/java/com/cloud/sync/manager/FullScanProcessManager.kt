@@ -4,6 +4,7 @@ import com.cloud.sync.common.SyncStatusManager
 import com.cloud.sync.common.config.SyncConfig
 import com.cloud.sync.domain.model.GalleryPhoto
 import com.cloud.sync.domain.model.TimeInterval
+import com.cloud.sync.domain.repositroy.IContentHashRepository
 import com.cloud.sync.domain.repositroy.IGalleryRepository
 import com.cloud.sync.domain.repositroy.ISyncRepository
 import com.cloud.sync.manager.interfaces.IFullScanProcessManager
@@ -18,12 +19,14 @@ import kotlin.coroutines.CoroutineContext
 /**
  * Concrete implementation of [com.cloud.sync.manager.interfaces.IFullScanProcessManager].
  * Manages the logic for a comprehensive gallery photo synchronization,
- * including interval management, photo fetching, batch syncing.
+ * including interval management, photo fetching, batch syncing
+ * and skipping photos whose content was already uploaded.
  */
 class FullScanProcessManager @Inject constructor(
     private val syncIntervalRepository: ISyncRepository,
     private val galleryRepository: IGalleryRepository,
     private val syncConfig: SyncConfig,
+    private val contentHashRepository: IContentHashRepository,
 ) : IFullScanProcessManager {
 
     override suspend fun initializeIntervals(): MutableList<TimeInterval> {
@@ -122,11 +125,18 @@ class FullScanProcessManager @Inject constructor(
         photos.forEachIndexed { index, photo ->
             context.ensureActive() // Check for parent coroutine cancellation.
 
-            // TODO: Integrate actual file upload mechanism here.
-            //  FileUploader.startSendFileAsync(File(photo.path))
-            withContext(Dispatchers.IO) { // Ensure simulated network operation runs on IO dispatcher.
-                delay(100) // Simulate upload time.
-                println("Uploaded ${photo.displayName}") // Log for development/debugging.
+            // Identical content under another name or after a re-index never hits the network.
+            val hash = contentHashRepository.hashOf(photo)
+            if (hash != null && contentHashRepository.isUploaded(hash)) {
+                println("Skipped duplicate ${photo.displayName}")
+            } else {
+                // TODO: Integrate actual file upload mechanism here.
+                //  FileUploader.startSendFileAsync(File(photo.path))
+                //  The hash is marked uploaded once the cloud acknowledged the last chunk, not here.
+                withContext(Dispatchers.IO) { // Ensure simulated network operation runs on IO dispatcher.
+                    delay(100) // Simulate upload time.
+                    println("Uploaded ${photo.displayName}") // Log for development/debugging.
+                }
             }
 
             lastSyncedTimestamp = photo.dateAdded
@@ -0,0 +1,32 @@
+package com.cloud.sync.manager
+
+import com.cloud.communication.cryto.UploadListener
+import com.cloud.sync.domain.repositroy.IContentHashRepository
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import java.io.File
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Records the content hash of every upload the cloud acknowledged completely, so the sync
+ * loops skip the same content under any name from then on.
+ */
+@Singleton
+class UploadedHashRecorder @Inject constructor(
+    private val contentHashRepository: IContentHashRepository
+) : UploadListener {
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    // Called on an upload thread, hashing the file must not hold it up.
+    override fun onUploadCompleted(fullName: String, file: File) {
+        scope.launch { record(file) }
+    }
+
+    suspend fun record(file: File) {
+        val hash = contentHashRepository.hashOf(file) ?: return
+        contentHashRepository.markUploaded(hash)
+    }
+}
@@ -6,6 +6,7 @@ import androidx.work.WorkerParameters
 import com.cloud.sync.common.config.SyncConfig
 import com.cloud.sync.domain.model.GalleryPhoto
 import com.cloud.sync.domain.model.TimeInterval
+import com.cloud.sync.domain.repositroy.IContentHashRepository
 import com.cloud.sync.domain.repositroy.IGalleryRepository
 import com.cloud.sync.domain.repositroy.ISyncRepository
 import kotlinx.coroutines.ExperimentalCoroutinesApi
@@ -29,6 +30,8 @@ class PhotoSyncWorkerTest {
     private lateinit var syncRepository: ISyncRepository
     /** Mock for the repository that accesses the device's media gallery. */
     private lateinit var galleryRepository: IGalleryRepository
+    /** Mock for the content-hash index used to skip duplicate uploads. */
+    private lateinit var contentHashRepository: IContentHashRepository
     /** Mock for application-wide synchronization settings. */
     private lateinit var syncConfig: SyncConfig
     /** Mocks for the Android framework dependencies required by the Worker's constructor. */
@@ -44,6 +47,7 @@ class PhotoSyncWorkerTest {
         // --- Initialize Mocks ---
         syncRepository = mock()
         galleryRepository = mock()
+        contentHashRepository = mock()
         syncConfig = mock()
         context = mock()
         workerParameters = mock()
@@ -60,7 +64,8 @@ class PhotoSyncWorkerTest {
             workerParameters,
             syncRepository,
             galleryRepository,
-            syncConfig
+            syncConfig,
+            contentHashRepository
         )
     }
 
@@ -176,6 +181,37 @@ class PhotoSyncWorkerTest {
             assertEquals(2004L, secondSave[0].end, "End timestamp should be updated to the last photo of the final batch.")
         }
 
+        @Test
+        @DisplayName("should skip photos whose content was already uploaded")
+        fun doWork_withDuplicateContent_skipsUploadAndSavesProgress() = runTest {
+            // Arrange
+            val anchorInterval = TimeInterval(start = 1000L, end = 2000L)
+            whenever(syncRepository.syncFromNowPoint).thenReturn(MutableStateFlow(1000L))
+            whenever(syncRepository.syncedIntervals).thenReturn(MutableStateFlow(mutableListOf(anchorInterval)))
+
+            // b.jpg is a renamed copy of content that was uploaded before.
+            val original = GalleryPhoto(id = 1, dateAdded = 2001, displayName = "a.jpg", path = "/dcim/a.jpg")
+            val copy = GalleryPhoto(id = 2, dateAdded = 2002, displayName = "b.jpg", path = "/dcim/b.jpg")
+            whenever(galleryRepository.getPhotos(startTimeSeconds = anchorInterval.end + 1)).thenReturn(listOf(original, copy))
+            whenever(contentHashRepository.hashOf(original)).thenReturn("aa")
+            whenever(contentHashRepository.hashOf(copy)).thenReturn("bb")
+            whenever(contentHashRepository.isUploaded("aa")).thenReturn(false)
+            whenever(contentHashRepository.isUploaded("bb")).thenReturn(true)
+
+            // Act
+            val result = worker.doWork()
+            advanceUntilIdle()
+
+            // Assert
+            assertEquals(Result.success(), result)
+            verify(contentHashRepository).isUploaded("aa")
+            // The upload is simulated, only UploadedHashRecorder records acknowledged uploads.
+            verify(contentHashRepository, never()).markUploaded("aa")
+            verify(contentHashRepository, never()).markUploaded("bb")
+            // Skipped photos still count as synced for interval progress.
+            verify(syncRepository).saveSyncedIntervals(argThat { this[0].end == 2002L })
+        }
+
         @Test
         @DisplayName("should return retry when a repository throws an exception")
         fun doWork_whenRepositoryThrowsException_returnsRetry() = runTest {
@@ -3,6 +3,7 @@ package com.cloud.sync.manager
 import com.cloud.sync.common.config.SyncConfig
 import com.cloud.sync.domain.model.GalleryPhoto
 import com.cloud.sync.domain.model.TimeInterval
+import com.cloud.sync.domain.repositroy.IContentHashRepository
 import com.cloud.sync.domain.repositroy.IGalleryRepository
 import com.cloud.sync.domain.repositroy.ISyncRepository
 import com.cloud.sync.manager.interfaces.IFullScanProcessManager
@@ -29,6 +30,7 @@ class FullScanProcessManagerTest {
     private lateinit var syncIntervalRepository: ISyncRepository
     private lateinit var galleryRepository: IGalleryRepository
     private lateinit var syncConfig: SyncConfig
+    private lateinit var contentHashRepository: IContentHashRepository
 
     // The class under test
     private lateinit var fullScanProcessManager: IFullScanProcessManager
@@ -43,6 +45,7 @@ class FullScanProcessManagerTest {
         syncIntervalRepository = mock()
         galleryRepository = mock()
         syncConfig = mock()
+        contentHashRepository = mock()
 
         // Configure common mock behavior: set the batch size for testing
         whenever(syncConfig.batchSize).thenReturn(3)
@@ -51,7 +54,8 @@ class FullScanProcessManagerTest {
         fullScanProcessManager = FullScanProcessManager(
             syncIntervalRepository,
             galleryRepository,
-            syncConfig
+            syncConfig,
+            contentHashRepository
         )
     }
 
@@ -278,6 +282,31 @@ class FullScanProcessManagerTest {
             })
         }
 
+        @Test
+        @DisplayName("should skip already uploaded content but still advance the interval")
+        fun processTailEnd_withDuplicateContent_skipsUploadAndAdvances() = runTest(testDispatcher) {
+            // Arrange: tail1 has content that was already uploaded under another name
+            val initialIntervals = mutableListOf(TimeInterval(0, 100))
+            val duplicate = GalleryPhoto(id = 5L, dateAdded = 101L, displayName = "tail1.jpg", path = "/dcim/tail1.jpg")
+            val fresh = GalleryPhoto(id = 6L, dateAdded = 105L, displayName = "tail2.jpg", path = "/dcim/tail2.jpg")
+            whenever(galleryRepository.getPhotos(startTimeSeconds = 101)).thenReturn(listOf(duplicate, fresh))
+            whenever(contentHashRepository.hashOf(duplicate)).thenReturn("aa")
+            whenever(contentHashRepository.hashOf(fresh)).thenReturn("bb")
+            whenever(contentHashRepository.isUploaded("aa")).thenReturn(true)
+            whenever(contentHashRepository.isUploaded("bb")).thenReturn(false)
+
+            // Act
+            val result = fullScanProcessManager.processTailEnd(initialIntervals, coroutineContext)
+            advanceUntilIdle()
+
+            // Assert: progress covers both photos. The upload is simulated, so nothing is
+            // recorded as uploaded, only UploadedHashRecorder does that for acknowledged uploads.
+            assertEquals(TimeInterval(0, 105), result[0])
+            verify(contentHashRepository).isUploaded("bb")
+            verify(contentHashRepository, never()).markUploaded("aa")
+            verify(contentHashRepository, never()).markUploaded("bb")
+        }
+
         @Test
         @DisplayName("should do nothing if no photos in tail end")
         fun processTailEnd_noPhotosInTail_noChange() = runTest(testDispatcher) {
@@ -0,0 +1,49 @@
+package com.cloud.sync.manager
+
+import com.cloud.sync.domain.repositroy.IContentHashRepository
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.test.runTest
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.mockito.kotlin.*
+import java.io.File
+
+@OptIn(ExperimentalCoroutinesApi::class)
+@DisplayName("UploadedHashRecorder Unit Tests")
+class UploadedHashRecorderTest {
+
+    /** Mock for the content-hash index that completed uploads are recorded in. */
+    private lateinit var contentHashRepository: IContentHashRepository
+
+    private lateinit var recorder: UploadedHashRecorder
+
+    @BeforeEach
+    fun setup() {
+        contentHashRepository = mock()
+        recorder = UploadedHashRecorder(contentHashRepository)
+    }
+
+    @Test
+    @DisplayName("should record the hash of a completed upload")
+    fun record_completedUpload_marksHashUploaded() = runTest {
+        val file = File("/dcim/a.jpg")
+        whenever(contentHashRepository.hashOf(file)).thenReturn("aa")
+
+        recorder.record(file)
+
+        verify(contentHashRepository).markUploaded("aa")
+    }
+
+    @Test
+    @DisplayName("should record nothing when the uploaded file cannot be hashed")
+    fun record_unreadableFile_marksNothing() = runTest {
+        val file = File("/dcim/gone.jpg")
+        whenever(contentHashRepository.hashOf(file)).thenReturn(null)
+
+        recorder.record(file)
+
+        verify(contentHashRepository).hashOf(file)
+        verifyNoMoreInteractions(contentHashRepository)
+    }
+}
@@ -12,3 +12,7 @@ dependencies {
     implementation(libs.okhttp.core)
     implementation(libs.jackson.databind)
 }
+
+tasks.test {
+    useJUnitPlatform()
+}
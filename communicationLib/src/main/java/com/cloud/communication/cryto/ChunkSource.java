@@ -0,0 +1,46 @@
+package com.cloud.communication.cryto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Supplies the chunks of a file that is being uploaded, one chunk at a time.
+ * Chunk numbers are 1-based, matching the ChunkPart sent to the server.
+ */
+public interface ChunkSource extends Closeable {
+
+    // Total file length in bytes (may be larger than 2 GB)
+    long length();
+
+    int chunkSize();
+
+    default int chunkCount() {
+        return (int) Math.max(1, (length() + chunkSize() - 1) / chunkSize());
+    }
+
+    default long chunkPosition(int chunkNumber) {
+        if (chunkNumber <= 0 || chunkNumber > chunkCount()) {
+            throw new IllegalArgumentException("Chunk number out of range: " + chunkNumber);
+        }
+        return (long) (chunkNumber - 1) * chunkSize();
+    }
+
+    default int chunkLength(int chunkNumber) {
+        return (int) Math.min(chunkSize(), length() - chunkPosition(chunkNumber));
+    }
+
+    /**
+     * Returns the bytes of the given chunk, positioned at 0 with the chunk length remaining.
+     * The buffer is only valid until the next call on this source.
+     */
+    ByteBuffer readChunk(int chunkNumber) throws IOException;
+
+    /**
+     * Whether the buffer returned by {@link #readChunk(int)} is overwritten by the next read.
+     * When false, the returned buffer may be kept after further reads.
+     */
+    default boolean reusesBuffer() {
+        return true;
+    }
+}
@@ -0,0 +1,20 @@
+package com.cloud.communication.cryto;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Selects how an upload reads its chunks from disk
+public enum ChunkSourceType {
+    POSITIONAL_READ,
+    MEMORY_MAPPED;
+
+    public ChunkSource open(Path path, int chunkSize) throws IOException {
+        switch (this) {
+            case MEMORY_MAPPED:
+                return new MappedChunkSource(path, chunkSize);
+            case POSITIONAL_READ:
+            default:
+                return new FileChannelChunkSource(path, chunkSize);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.cloud.communication.cryto;
+
+/**
+ * Optional protocol features as a bitmask. The client advertises {@link #SUPPORTED} with SetClient
+ * and the proxy echoes the subset the cloud accepts in the "cap" response header.
+ */
+public class ClientCapabilities {
+
+    // SetFile payload sent as length-prefixed binary params instead of Base64-in-JSON
+    public static final int BINARY_CHUNKS = 1;
+
+    // Batch command envelope carrying several small commands in one request
+    public static final int BATCH = 2;
+
+    public static final int SUPPORTED = BINARY_CHUNKS | BATCH;
+
+    public static final String PARAMETER = "cap";
+
+    public static boolean has(int capabilities, int capability) {
+        return (capabilities & capability) == capability;
+    }
+
+    public static int parse(String value) {
+        if (value == null || value.isEmpty()) return 0;
+        try {
+            return Integer.parseInt(value.trim()) & SUPPORTED;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
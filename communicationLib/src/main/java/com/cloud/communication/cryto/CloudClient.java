@@ -0,0 +1,147 @@
+package com.cloud.communication.cryto;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asynchronous client for the cloud commands. Every call returns a future completed with the
+ * response to that very request, so independent operations can run concurrently. A future fails
+ * with a TimeoutException when no response arrives in time, and cancelling it drops the request
+ * from the queue or cancels the HTTP call. From Kotlin, await the futures with
+ * kotlinx.coroutines.future.await().
+ *
+ * Arguments are sent as params in the splitData layout: [len][param]..., strings in UTF-8.
+ * Small mutations are coalesced into Batch requests when the cloud supports them.
+ */
+public class CloudClient {
+
+    // Shared by all clients, it only completes futures
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cloud-client-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final SessionClient session; // null follows the current session
+
+    private volatile long timeoutMillis = 30_000;
+
+    public CloudClient() {
+        this(null);
+    }
+
+    public CloudClient(SessionClient session) {
+        this.session = session;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Timeout must be > 0");
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public CompletableFuture<CloudResponse> getDir(String path) {
+        return call(Command.GetDir, path);
+    }
+
+    public CompletableFuture<CloudResponse> getStorageInfo() {
+        return call(Command.GetStorageInfo);
+    }
+
+    public CompletableFuture<CloudResponse> getOccupiedSpace() {
+        return call(Command.GetOccupiedSpace);
+    }
+
+    public CompletableFuture<CloudResponse> search(String path, String query) {
+        return call(Command.Search, path, query);
+    }
+
+    public CompletableFuture<CloudResponse> createDir(String path) {
+        return call(Command.CreateDir, path);
+    }
+
+    public CompletableFuture<CloudResponse> delete(String path) {
+        return call(Command.Delete, path);
+    }
+
+    public CompletableFuture<CloudResponse> rename(String path, String newName) {
+        return call(Command.Rename, path, newName);
+    }
+
+    public CompletableFuture<CloudResponse> move(String path, String targetDir) {
+        return call(Command.Move, path, targetDir);
+    }
+
+    public CompletableFuture<CloudResponse> copy(String path, String targetDir) {
+        return call(Command.Copy, path, targetDir);
+    }
+
+    public CompletableFuture<CloudResponse> share(String path) {
+        return call(Command.Share, path);
+    }
+
+    public CompletableFuture<CloudResponse> getGroup(String group) {
+        return call(Command.GetGroup, group);
+    }
+
+    public CompletableFuture<CloudResponse> addToGroup(String group, String path) {
+        return call(Command.AddToGroup, group, path);
+    }
+
+    public CompletableFuture<CloudResponse> removeFromGroup(String group, String path) {
+        return call(Command.RemoveFromGroup, group, path);
+    }
+
+    public CompletableFuture<CloudResponse> call(Command command, String... params) {
+        byte[][] encoded = new byte[params.length][];
+        for (int i = 0; i < params.length; i++) {
+            encoded[i] = params[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return call(command, timeoutMillis, encoded);
+    }
+
+    // Sends the raw params and completes with the response, or fails after timeoutMillis
+    public CompletableFuture<CloudResponse> call(Command command, long timeoutMillis, byte[]... params) {
+        ByteBuffer payload = frame(params);
+        SessionClient client = session != null ? session : SessionManager.getCurrentClient();
+        // The session's batcher, so commands from all CloudClients of a session end up in the same batches
+        CommandBatcher batcher = client.getBatcher();
+        CompletableFuture<List<ByteBuffer>> request = batcher.accepts(command)
+                ? batcher.submit(command, payload)
+                : client.request(command, payload);
+        CompletableFuture<CloudResponse> result = request.thenApply(response -> new CloudResponse(command.getId(), response));
+
+        ScheduledFuture<?> timeout = timer.schedule(() -> result.completeExceptionally(
+                new TimeoutException(command + " got no response in " + timeoutMillis + " ms")), timeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((response, error) -> {
+            timeout.cancel(false);
+            // Cancelled or timed out: stop the request too
+            if (error != null) {
+                request.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    private static ByteBuffer frame(byte[][] params) {
+        int length = 0;
+        for (byte[] param : params) {
+            length += 4 + param.length;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        for (byte[] param : params) {
+            frame.putInt(param.length).put(param);
+        }
+        frame.flip();
+        return frame;
+    }
+}
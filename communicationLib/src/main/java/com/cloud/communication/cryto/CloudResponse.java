@@ -0,0 +1,65 @@
+package com.cloud.communication.cryto;
+
+import static com.cloud.communication.cryto.ConversionUtils.bufferToString;
+import static com.cloud.communication.cryto.ConversionUtils.toArray;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Params of a command's response. Numbers are little-endian and strings UTF-8,
+ * like the params the client sends.
+ */
+public class CloudResponse {
+
+    private final int commandId;
+    private final List<ByteBuffer> params;
+
+    CloudResponse(int commandId, List<ByteBuffer> params) {
+        this.commandId = commandId;
+        this.params = params;
+    }
+
+    public int getCommandId() {
+        return commandId;
+    }
+
+    public int size() {
+        return params.size();
+    }
+
+    // Read-only view of the param
+    public ByteBuffer getBuffer(int index) {
+        return params.get(index).duplicate();
+    }
+
+    public byte[] getBytes(int index) {
+        return toArray(params.get(index));
+    }
+
+    public String getString(int index) {
+        return bufferToString(params.get(index));
+    }
+
+    public int getInt(int index) {
+        return params.get(index).getInt(0);
+    }
+
+    public long getLong(int index) {
+        return params.get(index).getLong(0);
+    }
+
+    public List<String> getStrings() {
+        List<String> strings = new ArrayList<>(params.size());
+        for (ByteBuffer param : params) {
+            strings.add(bufferToString(param));
+        }
+        return strings;
+    }
+
+    @Override
+    public String toString() {
+        return "CloudResponse{" + Command.getCommandName(commandId) + ", params=" + params.size() + '}';
+    }
+}
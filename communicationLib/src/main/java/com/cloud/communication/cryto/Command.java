@@ -1,8 +1,5 @@
 package com.cloud.communication.cryto;
 
-import java.util.Map;
-import java.util.HashMap;
-
 public enum Command {
     SetClient(0),
     Authentication(1),
@@ -24,14 +21,22 @@ public enum Command {
     RemoveFromGroup(17),
     GetStorageInfo(18),
     GetOccupiedSpace(19),
-    GetEncryptedQR(20);
+    GetEncryptedQR(20),
+    // Several commands in one request, see CommandBatcher
+    Batch(21);
 
     private final int id;
-    private static final Map<Integer, Command> map = new HashMap<>();
+    // Indexed by command id, ids are small and dense
+    private static final Command[] byId;
 
     static {
+        int maxId = 0;
+        for (Command command : Command.values()) {
+            maxId = Math.max(maxId, command.id);
+        }
+        byId = new Command[maxId + 1];
         for (Command command : Command.values()) {
-            map.put(command.id, command);
+            byId[command.id] = command;
         }
     }
 
@@ -44,7 +49,12 @@ public enum Command {
     }
 
     public static Command fromId(int id) {
-        return map.get(id);
+        return id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
+    // Size of a table indexed by command id
+    public static int idCount() {
+        return byId.length;
     }
 
     // Usage example equivalent function
@@ -0,0 +1,223 @@
+package com.cloud.communication.cryto;
+
+import static com.cloud.communication.cryto.ConversionUtils.bufferToString;
+import static com.cloud.communication.cryto.CryptoUtils.splitParams;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces small commands issued within a short window into one Batch request.
+ * The envelope reuses the splitData framing, one param per command:
+ *
+ * Batch request:  [len][CommandId][Payload][len][CommandId][Payload]...
+ * Batch response: [len][CommandId][Params][len][CommandId][Params]..., in request order
+ *
+ * where Params are the command's own response params, also in the splitData layout.
+ * Only used when the cloud accepted {@link ClientCapabilities#BATCH}.
+ */
+public class CommandBatcher {
+
+    private static final long WINDOW_MILLIS = 10;
+    private static final int MAX_COMMANDS = 32;
+    private static final int MAX_BYTES = 64 * 1024;
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "command-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final SessionClient client; // null batches for the current session
+    private List<Pending> pending = new ArrayList<>(); // guarded by this
+    private int pendingBytes; // guarded by this
+    private ScheduledFuture<?> flushTask; // guarded by this
+
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong commandsBatched = new AtomicLong();
+
+    public CommandBatcher() {
+        this(null);
+    }
+
+    CommandBatcher(SessionClient client) {
+        this.client = client;
+    }
+
+    private SessionClient client() {
+        return client != null ? client : SessionManager.getCurrentClient();
+    }
+
+    // Small commands whose responses are small too
+    public static boolean isBatchable(Command command) {
+        switch (command) {
+            case Delete:
+            case Rename:
+            case Move:
+            case Copy:
+            case CreateDir:
+            case AddToGroup:
+            case RemoveFromGroup:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public boolean accepts(Command command) {
+        return isBatchable(command) && ClientCapabilities.has(
+                client().getSession().getCapabilities(), ClientCapabilities.BATCH);
+    }
+
+    /**
+     * Queues the command for the next batch and completes with its response params.
+     * A batch is sent WINDOW_MILLIS after its first command, or earlier when it is full.
+     */
+    public CompletableFuture<List<ByteBuffer>> submit(Command command, ByteBuffer payload) {
+        Pending next = new Pending(command, payload);
+        List<Pending> full = null;
+        synchronized (this) {
+            pending.add(next);
+            pendingBytes += 8 + payload.remaining();
+            if (pending.size() >= MAX_COMMANDS || pendingBytes >= MAX_BYTES) {
+                full = takePending();
+            } else if (flushTask == null) {
+                flushTask = timer.schedule(this::flush, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return next.response;
+    }
+
+    // Sends the pending commands now
+    public void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    public long getCommandsBatched() {
+        return commandsBatched.get();
+    }
+
+    private List<Pending> takePending() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return batch;
+    }
+
+    private void send(List<Pending> batch) {
+        // Commands whose caller already gave up are left out
+        batch.removeIf(p -> p.response.isDone());
+        if (batch.isEmpty()) return;
+
+        if (batch.size() == 1) {
+            // No envelope for a lone command
+            Pending single = batch.get(0);
+            forward(client().request(single.command, single.payload), single.response);
+            return;
+        }
+
+        batchesSent.incrementAndGet();
+        commandsBatched.addAndGet(batch.size());
+        client().request(Command.Batch, envelope(batch)).whenComplete((params, error) -> {
+            if (error != null) {
+                batch.forEach(p -> p.response.completeExceptionally(error));
+            } else {
+                fanOut(batch, params);
+            }
+        });
+    }
+
+    private static ByteBuffer envelope(List<Pending> batch) {
+        int length = 0;
+        for (Pending p : batch) {
+            length += 8 + p.payload.remaining();
+        }
+        ByteBuffer envelope = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        for (Pending p : batch) {
+            envelope.putInt(4 + p.payload.remaining()).putInt(p.command.getId()).put(p.payload.duplicate());
+        }
+        envelope.flip();
+        return envelope;
+    }
+
+    private static void fanOut(List<Pending> batch, List<ByteBuffer> params) {
+        for (int i = 0; i < batch.size(); i++) {
+            Pending p = batch.get(i);
+            if (i >= params.size()) {
+                p.response.completeExceptionally(new IOException("Batch response has no entry for " + p.command));
+                continue;
+            }
+            ByteBuffer entry = params.get(i);
+            try {
+                if (entry.remaining() < 4) {
+                    throw new IOException("Batch response entry " + i + " has no command id");
+                }
+                int commandId = entry.getInt(0);
+                ByteBuffer body = entry.duplicate();
+                body.position(4);
+                List<ByteBuffer> entryParams = splitParams(body);
+                if (commandId == Command.Error.getId()) {
+                    String message = entryParams.isEmpty() ? "unknown" : bufferToString(entryParams.get(0));
+                    throw new IOException("Cloud error: " + message);
+                }
+                if (commandId != p.command.getId()) {
+                    throw new IOException("Batch response entry " + i + " is " + Command.getCommandName(commandId) + ", expected " + p.command);
+                }
+                p.response.complete(entryParams);
+            } catch (IOException | IllegalArgumentException e) {
+                p.response.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static void forward(CompletableFuture<List<ByteBuffer>> from, CompletableFuture<List<ByteBuffer>> to) {
+        from.whenComplete((params, error) -> {
+            if (error != null) {
+                to.completeExceptionally(error);
+            } else {
+                to.complete(params);
+            }
+        });
+        // Cancelling the caller's future cancels the request
+        to.whenComplete((params, error) -> {
+            if (to.isCancelled()) {
+                from.cancel(false);
+            }
+        });
+    }
+
+    private static final class Pending {
+        final Command command;
+        final ByteBuffer payload;
+        final CompletableFuture<List<ByteBuffer>> response = new CompletableFuture<>();
+
+        Pending(Command command, ByteBuffer payload) {
+            this.command = command;
+            this.payload = payload;
+        }
+    }
+}
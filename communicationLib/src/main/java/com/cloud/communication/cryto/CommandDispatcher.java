@@ -0,0 +1,49 @@
+package com.cloud.communication.cryto;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Response handlers indexed by command id. A command has at most one buffered and one
+ * streaming handler; registering again replaces the previous one.
+ */
+public class CommandDispatcher {
+
+    private final AtomicReferenceArray<ResponseHandler> handlers = new AtomicReferenceArray<>(Command.idCount());
+    private final AtomicReferenceArray<ResponseStreamHandler> streamHandlers = new AtomicReferenceArray<>(Command.idCount());
+
+    // Pass null to remove the handler
+    public void setHandler(Command command, ResponseHandler handler) {
+        handlers.set(command.getId(), handler);
+    }
+
+    // Decodes the params and hands the result to the consumer
+    public <T> void setHandler(Command command, ResponseDecoder<T> decoder, Consumer<T> consumer) {
+        setHandler(command, (commandId, params) -> consumer.accept(decoder.decode(params)));
+    }
+
+    // Pass null to buffer the command's params again
+    public void setStreamHandler(Command command, ResponseStreamHandler handler) {
+        streamHandlers.set(command.getId(), handler);
+    }
+
+    ResponseStreamHandler streamHandler(int commandId) {
+        return inRange(commandId) ? streamHandlers.get(commandId) : null;
+    }
+
+    // Returns false when no handler is registered for the command
+    boolean dispatch(int commandId, List<ByteBuffer> params) throws Exception {
+        ResponseHandler handler = inRange(commandId) ? handlers.get(commandId) : null;
+        if (handler == null) {
+            return false;
+        }
+        handler.handle(commandId, params);
+        return true;
+    }
+
+    private static boolean inRange(int commandId) {
+        return commandId >= 0 && commandId < Command.idCount();
+    }
+}
@@ -0,0 +1,74 @@
+package com.cloud.communication.cryto;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Permits for in-flight proxy requests with an adaptive limit. The limit is halved when the
+ * proxy reports its concurrency ceiling (HTTP 503) and grows by one after a full limit's worth
+ * of successful responses, never exceeding the configured maximum.
+ */
+public class ConcurrencyLimiter {
+
+    // Ignore further 503s from the same burst for this long after shrinking
+    private static final long DECREASE_COOLDOWN_NANOS = 1_000_000_000L;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger successes = new AtomicInteger();
+    private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime() - DECREASE_COOLDOWN_NANOS);
+
+    public ConcurrencyLimiter(int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = new AtomicInteger(maxLimit);
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.get()) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    public void release() {
+        if (inFlight.decrementAndGet() < 0) {
+            inFlight.incrementAndGet();
+            throw new IllegalStateException("Permit released twice");
+        }
+    }
+
+    public void onSuccess() {
+        int current = limit.get();
+        // Not while 503s are ignored, a limit grown back then would overload the proxy unchecked
+        if (current < maxLimit && getCooldownRemainingNanos() == 0 && successes.incrementAndGet() >= current) {
+            successes.set(0);
+            limit.compareAndSet(current, current + 1);
+        }
+    }
+
+    public void onOverload() {
+        long now = System.nanoTime();
+        long last = lastDecrease.get();
+        if (now - last < DECREASE_COOLDOWN_NANOS || !lastDecrease.compareAndSet(last, now)) return;
+
+        successes.set(0);
+        limit.updateAndGet(current -> Math.max(minLimit, current / 2));
+    }
+
+    // Time until a 503 shrinks the limit again, 0 when it would now
+    public long getCooldownRemainingNanos() {
+        return Math.max(0, lastDecrease.get() + DECREASE_COOLDOWN_NANOS - System.nanoTime());
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -1,5 +1,7 @@
 package com.cloud.communication.cryto;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 public class ConversionUtils {
@@ -126,4 +128,16 @@ public class ConversionUtils {
     public static String bufferToString(byte[] buffer) {
         return new String(buffer);
     }
+
+    // Decodes the remaining bytes without moving the buffer's position
+    public static String bufferToString(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+    }
+
+    // Copy of the remaining bytes, the buffer's position is not moved
+    public static byte[] toArray(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.duplicate().get(result);
+        return result;
+    }
 }
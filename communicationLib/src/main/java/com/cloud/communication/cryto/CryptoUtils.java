@@ -1,7 +1,9 @@
 package com.cloud.communication.cryto;
 
-import static com.cloud.communication.cryto.ConversionUtils.byteArrayToIntLE;
+import static com.cloud.communication.cryto.ConversionUtils.toArray;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -19,24 +21,40 @@ public class CryptoUtils {
         return input;
     }
 
+    // Copying variant of splitParams, one array per param
     public static List<byte[]> splitData(byte[] data) {
         List<byte[]> datas = new ArrayList<>();
-        int offset = 0;
-
-        while (offset < data.length) {
-            // Read 4 bytes as integer (big-endian)
-            int len = byteArrayToIntLE(data, offset);
-            offset += 4;
-
-            // Extract 'len' bytes
-            byte[] part = Arrays.copyOfRange(data, offset, offset + len);
-            datas.add(part);
-            offset += len;
+        for (ByteBuffer param : splitParams(ByteBuffer.wrap(data))) {
+            datas.add(toArray(param));
         }
-
         return datas;
     }
 
+    /**
+     * Splits the remaining bytes of data, laid out as [len][param][len][param]... with little-endian
+     * lengths, into read-only little-endian views of data. Nothing is copied and data is not moved.
+     * Throws IllegalArgumentException when a length is negative or runs past the end of the data.
+     */
+    public static List<ByteBuffer> splitParams(ByteBuffer data) {
+        ByteBuffer in = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        List<ByteBuffer> params = new ArrayList<>();
+        while (in.hasRemaining()) {
+            if (in.remaining() < 4) {
+                throw new IllegalArgumentException("Truncated param length at offset " + in.position());
+            }
+            int len = in.getInt();
+            if (len < 0 || len > in.remaining()) {
+                throw new IllegalArgumentException("Param length " + len + " at offset " + (in.position() - 4)
+                        + " exceeds the remaining " + in.remaining() + " bytes");
+            }
+            ByteBuffer param = in.slice();
+            param.limit(len);
+            params.add(param.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN));
+            in.position(in.position() + len);
+        }
+        return params;
+    }
+
     public static void alertBox(String message) {
         System.out.println("Alert: " + message);
         // Replace with  UI mechanism
@@ -0,0 +1,254 @@
+package com.cloud.communication.cryto;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of one file download. Chunks are written at their offsets into "target.part", which
+ * replaces the target once every chunk has arrived. The received chunks are saved next to it
+ * in "target.part.progress", so a download started again later only fetches the missing chunks.
+ */
+class Download {
+
+    private static final AtomicLong ids = new AtomicLong();
+
+    final long id = ids.incrementAndGet();
+    final SessionClient client; // Session the chunks are requested from
+    final String fullName;
+    final File target;
+    final int chunkSize;
+    private final Path part;
+    private final Path progress;
+
+    private FileChannel channel;
+    private long length = -1; // Unknown until the first chunk arrives
+    private int totalChunks;
+    private final BitSet received = new BitSet(); // Bit n - 1 is chunk n
+    private final Map<Integer, Long> inFlight = new HashMap<>(); // Chunk -> request time
+    private final Map<Integer, Integer> attempts = new HashMap<>();
+    private int savedChunks; // Received chunks at the last progress save
+    private boolean done;
+
+    Download(SessionClient client, String fullName, File target, int chunkSize) {
+        this.client = client;
+        this.fullName = fullName;
+        this.target = target;
+        this.chunkSize = chunkSize;
+        this.part = new File(target.getPath() + ".part").toPath();
+        this.progress = new File(target.getPath() + ".part.progress").toPath();
+    }
+
+    synchronized void open() throws IOException {
+        channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadProgress();
+    }
+
+    FileChannel channel() {
+        return channel;
+    }
+
+    synchronized int receivedChunks() {
+        return received.cardinality();
+    }
+
+    /**
+     * Sets the file length announced by the cloud, preallocating the part file on first use.
+     * Returns false when it differs from the known length, i.e. the file changed on the cloud.
+     */
+    synchronized boolean setLength(long fileLength, int chunks) throws IOException {
+        int expectedChunks = (int) Math.max(1, (fileLength + chunkSize - 1) / chunkSize);
+        if (fileLength < 0 || chunks != expectedChunks) {
+            return false;
+        }
+        if (length >= 0) {
+            return length == fileLength;
+        }
+        length = fileLength;
+        totalChunks = chunks;
+        if (channel.size() > length) {
+            channel.truncate(length);
+        } else if (channel.size() < length) {
+            channel.write(ByteBuffer.allocate(1), length - 1);
+        }
+        return true;
+    }
+
+    synchronized long position(int chunkNumber) {
+        return (long) (chunkNumber - 1) * chunkSize;
+    }
+
+    synchronized int chunkLength(int chunkNumber) {
+        return (int) Math.min(chunkSize, length - position(chunkNumber));
+    }
+
+    synchronized boolean wants(int chunkNumber) {
+        return !done && chunkNumber >= 1 && chunkNumber <= totalChunks && !received.get(chunkNumber - 1);
+    }
+
+    // Chunks to request so that at most parallel chunks are in flight, lowest offsets first
+    synchronized List<Integer> nextChunks(int parallel, long now) {
+        List<Integer> next = new ArrayList<>();
+        if (done) return next;
+        if (length < 0) {
+            // The first chunk also tells the length, the rest waits for it
+            if (inFlight.isEmpty()) {
+                next.add(1);
+            }
+        } else {
+            for (int chunk = received.nextClearBit(0) + 1;
+                 chunk <= totalChunks && inFlight.size() + next.size() < parallel;
+                 chunk = received.nextClearBit(chunk) + 1) {
+                if (!inFlight.containsKey(chunk)) {
+                    next.add(chunk);
+                }
+            }
+        }
+        for (int chunk : next) {
+            inFlight.put(chunk, now);
+            attempts.merge(chunk, 1, Integer::sum);
+        }
+        return next;
+    }
+
+    // Marks the chunk as written, returns true when it was the last one
+    synchronized boolean onChunkWritten(int chunkNumber) {
+        inFlight.remove(chunkNumber);
+        attempts.remove(chunkNumber);
+        if (done || received.get(chunkNumber - 1)) return false;
+        received.set(chunkNumber - 1);
+        if (received.cardinality() == totalChunks) {
+            done = true;
+            return true;
+        }
+        return false;
+    }
+
+    // Chunks requested longer ago than the timeout, they become requestable again
+    synchronized List<Integer> expired(long now, long timeoutNanos) {
+        List<Integer> expired = new ArrayList<>();
+        Iterator<Map.Entry<Integer, Long>> it = inFlight.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Long> entry = it.next();
+            if (now - entry.getValue() > timeoutNanos) {
+                expired.add(entry.getKey());
+                it.remove();
+            }
+        }
+        return expired;
+    }
+
+    synchronized int attempts(int chunkNumber) {
+        return attempts.getOrDefault(chunkNumber, 0);
+    }
+
+    // Saves progress when at least interval chunks arrived since the last save
+    synchronized void checkpoint(int interval) {
+        if (received.cardinality() - savedChunks >= interval) {
+            saveProgress();
+        }
+    }
+
+    // Checks the part file against the announced length and moves it to the target
+    synchronized void complete() throws IOException {
+        if (received.cardinality() != totalChunks || channel.size() != length) {
+            throw new IOException("Downloaded " + channel.size() + " of " + length + " bytes");
+        }
+        channel.force(true);
+        channel.close();
+        Files.move(part, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(progress);
+    }
+
+    // Stops the download, keeping what arrived so it can be resumed
+    synchronized void suspend() {
+        done = true;
+        saveProgress();
+        close();
+    }
+
+    // Stops the download and deletes what arrived
+    synchronized void discard() {
+        done = true;
+        close();
+        try {
+            Files.deleteIfExists(part);
+            Files.deleteIfExists(progress);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void close() {
+        if (channel == null || !channel.isOpen()) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void loadProgress() {
+        if (!Files.exists(progress)) return;
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(progress)) {
+            properties.load(in);
+            long savedLength = Long.parseLong(properties.getProperty("length"));
+            boolean sameDownload = fullName.equals(properties.getProperty("fullName"))
+                    && chunkSize == Integer.parseInt(properties.getProperty("chunkSize"))
+                    && channel.size() == savedLength;
+            if (sameDownload) {
+                length = savedLength;
+                totalChunks = (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+                received.or(BitSet.valueOf(Base64.getDecoder().decode(properties.getProperty("received"))));
+                received.clear(totalChunks, Math.max(totalChunks, received.length()));
+                savedChunks = received.cardinality();
+                System.out.println("Resuming " + fullName + " with " + savedChunks + "/" + totalChunks + " chunks");
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Ignoring unreadable download progress for " + fullName + ": " + e.getMessage());
+        }
+        received.clear();
+    }
+
+    private void saveProgress() {
+        if (length < 0 || channel == null || !channel.isOpen()) return;
+
+        Properties properties = new Properties();
+        properties.setProperty("fullName", fullName);
+        properties.setProperty("length", String.valueOf(length));
+        properties.setProperty("chunkSize", String.valueOf(chunkSize));
+        properties.setProperty("received", Base64.getEncoder().encodeToString(received.toByteArray()));
+
+        try {
+            // Chunks must be on disk before the progress claims them
+            channel.force(false);
+            Path tmp = progress.resolveSibling(progress.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, null);
+            }
+            Files.move(tmp, progress, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            savedChunks = received.cardinality();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
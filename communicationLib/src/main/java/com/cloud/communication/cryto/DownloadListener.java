@@ -0,0 +1,10 @@
+package com.cloud.communication.cryto;
+
+import java.io.File;
+
+// Notified on a download worker thread when a download ends
+public interface DownloadListener {
+    void onDownloadCompleted(String fullName, File file);
+
+    void onDownloadFailed(String fullName, String reason);
+}
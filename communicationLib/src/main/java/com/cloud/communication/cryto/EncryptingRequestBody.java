@@ -0,0 +1,90 @@
+package com.cloud.communication.cryto;
+
+import com.cloud.communication.cryto.encryption.AesEncryption;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * AES request body that encrypts the command header and payload while OkHttp writes it,
+ * through a fixed-size buffer, instead of building the plaintext and ciphertext arrays up front.
+ * The payload buffers are only read through duplicates, so the body can be written again on retry.
+ */
+public class EncryptingRequestBody extends RequestBody {
+
+    private static final MediaType MEDIA_TYPE = MediaType.parse("application/octet-stream");
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final byte[] header;
+    private final ByteBuffer[] payload;
+    private final SecretKey key;
+    private final byte[] iv;
+    private final long plainLength;
+
+    public EncryptingRequestBody(byte[] header, ByteBuffer[] payload, SecretKey key, byte[] iv) {
+        this.header = header;
+        this.payload = payload;
+        this.key = key;
+        this.iv = iv;
+        long length = header.length;
+        for (ByteBuffer part : payload) {
+            length += part.remaining();
+        }
+        this.plainLength = length;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        return AesEncryption.encryptedLength(plainLength);
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        byte[] out = new byte[BUFFER_SIZE + 16];
+        ByteBuffer output = ByteBuffer.wrap(out);
+        boolean finished = false;
+        try {
+            Cipher cipher = AesEncryption.encryptCipher(key, iv);
+            update(cipher, ByteBuffer.wrap(header), output, sink);
+            for (ByteBuffer part : payload) {
+                update(cipher, part.duplicate(), output, sink);
+            }
+            output.clear();
+            int written = cipher.doFinal(ByteBuffer.allocate(0), output);
+            sink.write(out, 0, written);
+            finished = true;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Encryption failed", e);
+        } finally {
+            if (!finished) {
+                AesEncryption.resetEncryptCipher();
+            }
+        }
+    }
+
+    private static void update(Cipher cipher, ByteBuffer input, ByteBuffer output, BufferedSink sink) throws Exception {
+        while (input.hasRemaining()) {
+            ByteBuffer slice = input.duplicate();
+            slice.limit(slice.position() + Math.min(BUFFER_SIZE, slice.remaining()));
+            input.position(slice.limit());
+
+            output.clear();
+            int written = cipher.update(slice, output);
+            sink.write(output.array(), 0, written);
+        }
+    }
+}
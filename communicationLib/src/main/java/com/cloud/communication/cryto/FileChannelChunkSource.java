@@ -0,0 +1,73 @@
+package com.cloud.communication.cryto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads chunks on demand with positional reads, so only one chunk buffer is resident per upload.
+ */
+public class FileChannelChunkSource implements ChunkSource {
+
+    // Counters shared by all positional-read uploads
+    private static final AtomicLong readCount = new AtomicLong();
+    private static final AtomicLong bytesRead = new AtomicLong();
+
+    private final FileChannel channel;
+    private final long length;
+    private final int chunkSize;
+    private final ByteBuffer buffer;
+
+    public FileChannelChunkSource(Path path, int chunkSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.length = channel.size();
+        this.chunkSize = chunkSize;
+        this.buffer = ByteBuffer.allocate((int) Math.min(chunkSize, Math.max(length, 1)));
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public synchronized ByteBuffer readChunk(int chunkNumber) throws IOException {
+        long position = chunkPosition(chunkNumber);
+        int toTake = chunkLength(chunkNumber);
+
+        buffer.clear();
+        buffer.limit(toTake);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("File truncated while reading chunk " + chunkNumber);
+            }
+        }
+        buffer.flip();
+        readCount.incrementAndGet();
+        bytesRead.addAndGet(toTake);
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static long getReadCount() {
+        return readCount.get();
+    }
+
+    public static long getBytesRead() {
+        return bytesRead.get();
+    }
+}
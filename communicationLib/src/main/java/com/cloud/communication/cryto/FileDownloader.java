@@ -0,0 +1,262 @@
+package com.cloud.communication.cryto;
+
+import static com.cloud.communication.cryto.ConversionUtils.bufferToString;
+import static com.cloud.communication.cryto.CryptoUtils.alertBox;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads files from the cloud in chunks, the read-side mirror of {@link FileUploader}.
+ * Several chunks of a download are requested at once and written at their offsets into a
+ * preallocated part file, straight from the decrypting response stream when possible.
+ *
+ * GetFile request:  [len][FullName][4][ChunkPart][4][ChunkSize]
+ * GetFile response: [len][FullName][4][ChunkPart][4][TotalChunk][8][FileLength][len][Data], little-endian
+ */
+public class FileDownloader {
+
+    private static final int CHUNK_SIZE = 1024 * 1024; // 1MB
+    private static final int MAX_CHUNK_ATTEMPTS = 5;
+    // Progress is saved to disk every this many chunks
+    private static final int PROGRESS_INTERVAL = 8;
+
+    private static volatile int parallelChunks = 4;
+    private static volatile long chunkTimeoutMillis = 30_000;
+
+    private static volatile DownloadListener listener;
+
+    // Downloads of all sessions by id; each session also keeps its own by name, as responses
+    // only carry the file name, so one download per name and session is active at a time
+    private static final Map<Long, Download> active = new ConcurrentHashMap<>();
+
+    // Sends chunk requests, which may block while the request queue is full, and checks timeouts
+    private static final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "download-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        worker.scheduleWithFixedDelay(FileDownloader::resendExpiredChunks, 1, 1, TimeUnit.SECONDS);
+    }
+
+    // Number of chunks each download keeps in flight
+    public static void setParallelChunks(int chunks) {
+        if (chunks < 1) {
+            throw new IllegalArgumentException("Parallel chunks must be >= 1");
+        }
+        parallelChunks = chunks;
+    }
+
+    public static void setChunkTimeoutMillis(long timeoutMillis) {
+        chunkTimeoutMillis = timeoutMillis;
+    }
+
+    public static void setListener(DownloadListener downloadListener) {
+        listener = downloadListener;
+    }
+
+    /**
+     * Starts downloading the cloud file from the current session into target and returns the
+     * download id. A partial download of the same file into the same target continues with the
+     * missing chunks.
+     */
+    public static long download(String fullName, File target) {
+        Download download = new Download(SessionManager.getCurrentClient(), fullName, target, CHUNK_SIZE);
+        Download existing = download.client.downloads().putIfAbsent(fullName, download);
+        if (existing != null) {
+            return existing.id;
+        }
+        active.put(download.id, download);
+
+        worker.execute(() -> {
+            try {
+                download.open();
+                requestChunks(download);
+            } catch (IOException e) {
+                e.printStackTrace();
+                fail(download, "cannot open " + target + ": " + e.getMessage());
+            }
+        });
+        return download.id;
+    }
+
+    // Stops the download and deletes the partial file
+    public static boolean cancelDownload(long downloadId) {
+        Download download = active.remove(downloadId);
+        if (download == null) return false;
+        download.client.downloads().remove(download.fullName, download);
+        download.discard();
+        return true;
+    }
+
+    // Response path for non-streamed (non-AES) responses
+    static void handleServerDownloadResponse(SessionClient client, List<ByteBuffer> params) {
+        if (params.size() < 5) {
+            System.out.println("Malformed GetFile response");
+            return;
+        }
+        if (!validHeader(params.get(1), params.get(2), params.get(3))) return;
+        ByteBuffer data = params.get(4);
+        onChunk(client, bufferToString(params.get(0)), params.get(1).getInt(0), params.get(2).getInt(0),
+                params.get(3).getLong(0), data.remaining(), (channel, position) -> {
+                    ByteBuffer src = data.duplicate();
+                    long offset = position - src.position();
+                    while (src.hasRemaining()) {
+                        channel.write(src, offset + src.position());
+                    }
+                });
+    }
+
+    static void onChunkResponse(SessionClient client, ParamReader reader) throws IOException {
+        ByteBuffer[] header = new ByteBuffer[4];
+        for (int i = 0; i < header.length; i++) {
+            if (reader.nextParam() < 0) {
+                System.out.println("Malformed GetFile response");
+                return;
+            }
+            header[i] = ByteBuffer.wrap(reader.readParam()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (!validHeader(header[1], header[2], header[3])) return;
+        int dataLength = reader.nextParam();
+        if (dataLength < 0) {
+            System.out.println("Malformed GetFile response");
+            return;
+        }
+        onChunk(client, bufferToString(header[0]), header[1].getInt(0), header[2].getInt(0), header[3].getLong(0),
+                dataLength, reader::transferParam);
+    }
+
+    private static void onChunk(SessionClient client, String fullName, int chunkNumber, int totalChunks,
+                                long fileLength, int dataLength, ChunkWriter writer) {
+        Download download = client.downloads().get(fullName);
+        if (download == null) {
+            System.out.println("Download state missing for " + fullName);
+            return;
+        }
+
+        try {
+            if (!download.setLength(fileLength, totalChunks)) {
+                fail(download, "the file changed on the cloud");
+                return;
+            }
+            if (!download.wants(chunkNumber)) return; // Duplicate or late chunk
+            if (dataLength != download.chunkLength(chunkNumber)) {
+                System.out.println("Chunk " + chunkNumber + " of " + fullName + " has " + dataLength + " bytes, requesting again");
+                return; // The timeout requests it again
+            }
+
+            // Positional writes, chunks of one file may be written concurrently
+            writer.write(download.channel(), download.position(chunkNumber));
+        } catch (IOException e) {
+            if (!active.containsKey(download.id)) return; // Cancelled while writing
+            e.printStackTrace();
+            fail(download, "cannot write " + download.target + ": " + e.getMessage());
+            return;
+        }
+
+        if (download.onChunkWritten(chunkNumber)) {
+            worker.execute(() -> complete(download));
+        } else {
+            download.checkpoint(PROGRESS_INTERVAL);
+            worker.execute(() -> requestChunks(download));
+        }
+    }
+
+    private static void requestChunks(Download download) {
+        if (!active.containsKey(download.id)) return;
+        for (int chunk : download.nextChunks(parallelChunks, System.nanoTime())) {
+            download.client.executeRequest(Command.GetFile.getId(), chunkRequest(download, chunk));
+        }
+    }
+
+    private static byte[] chunkRequest(Download download, int chunkNumber) {
+        byte[] name = download.fullName.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 + name.length + 8 + 8)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(name.length).put(name)
+                .putInt(4).putInt(chunkNumber)
+                .putInt(4).putInt(download.chunkSize)
+                .array();
+    }
+
+    private static void complete(Download download) {
+        if (!forget(download)) return;
+        try {
+            download.complete();
+        } catch (IOException e) {
+            e.printStackTrace();
+            download.discard();
+            notifyFailed(download, "verification failed: " + e.getMessage());
+            return;
+        }
+        System.out.println("Download completed for " + download.fullName);
+        DownloadListener listener = FileDownloader.listener;
+        if (listener != null) {
+            listener.onDownloadCompleted(download.fullName, download.target);
+        }
+    }
+
+    // Keeps the part file and progress so the download can be resumed later
+    private static void fail(Download download, String reason) {
+        if (!forget(download)) return;
+        download.suspend();
+        notifyFailed(download, reason);
+    }
+
+    private static void notifyFailed(Download download, String reason) {
+        alertBox("Download failed for " + download.fullName + ": " + reason);
+        DownloadListener listener = FileDownloader.listener;
+        if (listener != null) {
+            listener.onDownloadFailed(download.fullName, reason);
+        }
+    }
+
+    private static boolean forget(Download download) {
+        if (active.remove(download.id) == null) return false;
+        download.client.downloads().remove(download.fullName, download);
+        return true;
+    }
+
+    private static void resendExpiredChunks() {
+        long now = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(chunkTimeoutMillis);
+        for (Download download : active.values()) {
+            try {
+                List<Integer> expired = download.expired(now, timeoutNanos);
+                if (expired.isEmpty()) continue;
+
+                if (expired.stream().anyMatch(chunk -> download.attempts(chunk) >= MAX_CHUNK_ATTEMPTS)) {
+                    fail(download, "chunks " + expired + " were not received");
+                    continue;
+                }
+                System.out.println("Requesting chunks " + expired + " of " + download.fullName + " again");
+                requestChunks(download);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static boolean validHeader(ByteBuffer chunkPart, ByteBuffer totalChunk, ByteBuffer fileLength) {
+        if (chunkPart.remaining() == 4 && totalChunk.remaining() == 4 && fileLength.remaining() == 8) return true;
+        System.out.println("Malformed GetFile response");
+        return false;
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter {
+        void write(FileChannel channel, long position) throws IOException;
+    }
+}
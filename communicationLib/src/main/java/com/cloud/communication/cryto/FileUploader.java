@@ -9,111 +9,176 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.Base64;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.BiConsumer;
+import java.util.concurrent.CompletableFuture;
 
 
 public class FileUploader {
 
     private static final int CHUNK_SIZE = 1024 * 1024; // 1MB
 
-    // Internal state
-    private static final Map<String, byte[]> upload = new ConcurrentHashMap<>();
-    private static final Map<String, Integer> chunkParts = new ConcurrentHashMap<>();
-    private static final Map<String, Integer> chunkLength = new ConcurrentHashMap<>();
-    private static final Map<String, BiConsumer<String, Integer>> chunkRequest = new ConcurrentHashMap<>();
+    private static final int UPLOAD_WORKERS = 2;
+    private static final int MAX_ACTIVE_UPLOADS = 4;
+
+    // Defaults for the upload schedulers of all sessions
+    private static volatile int windowSize = 4;
+    private static volatile long ackTimeoutMillis = 30_000;
+    // Set by the app to a directory that survives restarts, uploads do not resume until then
+    private static volatile File journalDirectory;
+
+    private static volatile UploadListener listener;
+
     private static final ObjectMapper objectMapper = new ObjectMapper();
-    public static void startSendFileAsync(File file) {
-        new Thread(() -> startSendFile(file)).start();
+
+    // Number of chunks each upload keeps in flight before waiting for acks
+    public static void setWindowSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Window size must be >= 1");
+        }
+        windowSize = size;
+        UploadScheduler scheduler = SessionManager.getCurrentClient().existingUploads();
+        if (scheduler != null) scheduler.setWindowSize(size);
     }
 
-    public static void startSendFile(File file) {
-        try {
-            byte[] fileData = Files.readAllBytes(file.toPath());
+    public static void setAckTimeoutMillis(long timeoutMillis) {
+        ackTimeoutMillis = timeoutMillis;
+        UploadScheduler scheduler = SessionManager.getCurrentClient().existingUploads();
+        if (scheduler != null) scheduler.setAckTimeoutMillis(timeoutMillis);
+    }
 
-            String fullPath = file.getName(); // Or construct full path if needed
+    /**
+     * Directory where upload progress is kept so uploads resume after a process restart.
+     * Each session id gets its own subdirectory, null disables resuming. Must outlive the
+     * process, a temp directory cleared by the OS loses the progress.
+     */
+    public static void setJournalDirectory(File directory) {
+        journalDirectory = directory;
+        SessionClient client = SessionManager.getCurrentClient();
+        UploadScheduler scheduler = client.existingUploads();
+        if (scheduler != null) scheduler.setJournal(journal(client.getSession()));
+    }
 
-            upload.put(fullPath, fileData);
+    public static void setListener(UploadListener uploadListener) {
+        listener = uploadListener;
+    }
 
-            // Start sending from chunk 1
-            chunkRequestCallback(fullPath, 1);
+    // Scheduler of a session, configured with the current defaults
+    static UploadScheduler newScheduler(SessionClient client) {
+        UploadScheduler scheduler = new UploadScheduler(client, CHUNK_SIZE, UPLOAD_WORKERS, MAX_ACTIVE_UPLOADS);
+        scheduler.setWindowSize(windowSize);
+        scheduler.setAckTimeoutMillis(ackTimeoutMillis);
+        scheduler.setJournal(journal(client.getSession()));
+        return scheduler;
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private static UploadJournal journal(Session session) {
+        File directory = journalDirectory;
+        if (directory == null) return null;
+        // Uploads are resumed by file name, which is only unique within one cloud
+        String name = session.getId() != null ? String.valueOf(session.getId()) : "default";
+        return new UploadJournal(new File(directory, name).toPath());
+    }
+
+    public static UploadMetrics getMetrics() {
+        return SessionManager.getCurrentClient().getUploadMetrics();
     }
 
-    private static void chunkRequestCallback(String fullFileName, int chunkNumber) {
-        // This simulates the JavaScript chunkRequestCallback
-        setFile(fullFileName, chunkNumber, upload.get(fullFileName));
+    public static boolean cancelUpload(long uploadId) {
+        return SessionManager.getCurrentClient().cancelUpload(uploadId);
     }
 
-    private static void setFile(String fullFileName, int chunkNumber, byte[] data) {
-        int fileLength = data.length;
-        int position = (chunkNumber - 1) * CHUNK_SIZE;
-        int toTake = Math.min(CHUNK_SIZE, fileLength - position);
+    public static long startSendFileAsync(File file) {
+        return startSendFileAsync(file, ChunkSourceType.POSITIONAL_READ);
+    }
 
-        byte[] chunkData = new byte[toTake];
-        System.arraycopy(data, position, chunkData, 0, toTake);
+    // Uploads are queued on the current session's worker pool, the returned id identifies the upload
+    public static long startSendFileAsync(File file, ChunkSourceType sourceType) {
+        return startSendFile(file, sourceType);
+    }
 
-        uploadFile(fullFileName, chunkData, chunkNumber, fileLength, FileUploader::chunkRequestCallback);
+    public static long startSendFile(File file) {
+        return startSendFile(file, ChunkSourceType.POSITIONAL_READ);
+    }
 
-        // Waiting for server response to continue (will call chunkRequestCallback)
+    public static long startSendFile(File file, ChunkSourceType sourceType) {
+        return SessionManager.getCurrentClient().startSendFile(file, sourceType);
     }
 
-    private static void uploadFile(String fullFileName, byte[] chunkData, int chunkNumber, int fileLength,
-                                   BiConsumer<String, Integer> chunkRequestCallback) {
+    // Completes exceptionally when the chunk's request fails, its ack goes to handleServerUploadResponse
+    static CompletableFuture<Void> sendChunk(SessionClient client, Upload upload, int chunkNumber) throws IOException {
+        ChunkSource source = upload.source;
+        ByteBuffer[] payload;
+        // A reused chunk buffer is copied before another chunk is read, mapped slices are sent as they are
+        synchronized (source) {
+            ByteBuffer chunk = source.readChunk(chunkNumber);
+            if (source.reusesBuffer()) {
+                ByteBuffer copy = ByteBuffer.allocate(chunk.remaining()).put(chunk);
+                copy.flip();
+                chunk = copy;
+            }
+            payload = uploadPayload(client.getSession(), upload.fullName, chunk, chunkNumber, source.chunkCount());
+        }
+
+        return uploadFile(client, payload);
+    }
+
+    private static ByteBuffer[] uploadPayload(Session session, String fullFileName, ByteBuffer chunk, int chunkNumber, int parts) throws IOException {
         if (chunkNumber <= 0) {
             throw new IllegalArgumentException("Chunk number must be >= 1");
         }
 
-        if (!chunkRequest.containsKey(fullFileName) && chunkRequestCallback != null) {
-            chunkRequest.put(fullFileName, chunkRequestCallback);
-        }
+        System.out.printf("Uploading chunk %d/%d for file: %s\n", chunkNumber, parts, fullFileName);
 
-        int lengthOfChunks;
-        if (chunkData.length == fileLength) {
-            lengthOfChunks = fileLength;
-        } else if (chunkNumber == 1) {
-            lengthOfChunks = chunkData.length;
-            chunkLength.put(fullFileName, lengthOfChunks);
-        } else {
-            lengthOfChunks = chunkLength.getOrDefault(fullFileName, CHUNK_SIZE);
+        if (ClientCapabilities.has(session.getCapabilities(), ClientCapabilities.BINARY_CHUNKS)) {
+            return binaryChunk(fullFileName, chunk, chunkNumber, parts);
         }
+        return new ByteBuffer[]{ByteBuffer.wrap(jsonChunk(fullFileName, chunk, chunkNumber, parts))};
+    }
 
-        int parts = (int) Math.ceil((double) fileLength / lengthOfChunks);
-        parts = Math.max(parts, 1);
-        chunkParts.put(fullFileName, parts);
+    private static CompletableFuture<Void> uploadFile(SessionClient client, ByteBuffer[] payload) {
+        // The payload buffers are encrypted straight into the request body
+        return client.request(Command.SetFile, payload)
+                .thenAccept(params -> handleServerUploadResponse(client, params));
+    }
 
+    // Legacy payload: the chunk Base64-encoded inside a JSON FileChunk
+    private static byte[] jsonChunk(String fullFileName, ByteBuffer chunk, int chunkNumber, int parts) throws IOException {
+        byte[] chunkData = new byte[chunk.remaining()];
+        chunk.get(chunkData);
         String base64Chunk = Base64.getEncoder().encodeToString(chunkData);
         FileChunk fileChunkObject = new FileChunk(fullFileName, base64Chunk, chunkNumber, parts);
 
-        System.out.printf("Uploading chunk %d/%d for file: %s\n", chunkNumber, parts, fullFileName);
-
-
-        try {
-            // STEP 1: Serialize the Java object to a JSON String. (Equivalent to JSON.stringify)
-            String jsonString = objectMapper.writeValueAsString(fileChunkObject);
+        // STEP 1: Serialize the Java object to a JSON String. (Equivalent to JSON.stringify)
+        String jsonString = objectMapper.writeValueAsString(fileChunkObject);
 
-            // STEP 2: Convert the JSON String to a byte array using UTF-8. (Equivalent to TextEncoder.encode)
-            byte[] payload = jsonString.getBytes(StandardCharsets.UTF_8);
-
-            // Now, send the final byte array payload
-            RequestManager.executeRequest(Command.SetFile.getId(), payload);
+        // STEP 2: Convert the JSON String to a byte array using UTF-8. (Equivalent to TextEncoder.encode)
+        return jsonString.getBytes(StandardCharsets.UTF_8);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            // Handle serialization error, maybe abort the upload
-        }
+    // Binary payload in the splitData layout: [len][FullName][4][ChunkPart][4][TotalChunk][len][Data], little-endian.
+    // Returned as the frame header followed by the chunk itself, so the data is not copied into the frame
+    static ByteBuffer[] binaryChunk(String fullFileName, ByteBuffer chunk, int chunkNumber, int parts) {
+        byte[] name = fullFileName.getBytes(StandardCharsets.UTF_8);
+        int dataLength = chunk.remaining();
+        ByteBuffer header = ByteBuffer.allocate(4 + name.length + 8 + 8 + 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(name.length).put(name);
+        header.putInt(4).putInt(chunkNumber);
+        header.putInt(4).putInt(parts);
+        header.putInt(dataLength);
+        header.flip();
+        return new ByteBuffer[]{header, chunk};
+    }
 
+    public static void handleServerUploadResponse(List<ByteBuffer> parts) {
+        handleServerUploadResponse(SessionManager.getCurrentClient(), parts);
     }
 
-    public static void handleServerUploadResponse(List<byte[]> parts) {
+    static void handleServerUploadResponse(SessionClient client, List<ByteBuffer> parts) {
         // Server responds with: "fileName\tcurrentChunkNumber"
 
 
@@ -121,25 +186,20 @@ public class FileUploader {
         if (partsStr.length != 2) return;
 
         String fullFileName = partsStr[0];
-        int nextChunkNumber = Integer.parseInt(partsStr[1]) + 1;
-        int totalChunks = chunkParts.getOrDefault(fullFileName, -1);
-        if (totalChunks == -1) {
+        int ackedChunkNumber = Integer.parseInt(partsStr[1]);
+        UploadScheduler scheduler = client.existingUploads();
+        if (scheduler == null) {
             System.out.println("Upload state missing for " + fullFileName);
             return;
         }
+        scheduler.onAck(fullFileName, ackedChunkNumber);
+    }
 
-        if (nextChunkNumber > totalChunks) {
-            System.out.println("Upload completed for " + fullFileName);
-            upload.remove(fullFileName);
-            chunkLength.remove(fullFileName);
-            chunkParts.remove(fullFileName);
-            chunkRequest.remove(fullFileName);
-            refreshDirectory(fullFileName);
-        } else if (chunkRequest.containsKey(fullFileName)) {
-            BiConsumer<String, Integer> callback = chunkRequest.get(fullFileName);
-            if (callback != null) {
-                callback.accept(fullFileName, nextChunkNumber);
-            }
+    static void onUploadCompleted(String fullFileName, File file) {
+        refreshDirectory(fullFileName);
+        UploadListener listener = FileUploader.listener;
+        if (listener != null) {
+            listener.onUploadCompleted(fullFileName, file);
         }
     }
 
@@ -1,9 +1,11 @@
 package com.cloud.communication.cryto;
 
-import static com.cloud.communication.cryto.ConversionUtils.resizeBuffers;
-import static com.cloud.communication.cryto.ConversionUtils.toByteArray;
-import static com.cloud.communication.cryto.ConversionUtils.toIntArray;
-
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 
 
@@ -19,11 +21,41 @@ public class HashUtils {
         }
     }
 
+    // SHA-256 of a file, streamed through a small buffer so large videos are never loaded whole
+    public static byte[] fileHash256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
     public static byte[] fastHash256(byte[] input) {
-        int bl = input.length;
-        int newSize = ((bl + 31) / 32) * 32;
-        byte[] bytes = resizeBuffers(input, newSize);
-        int[] data = toIntArray(bytes);
+        byte[] result = new byte[32];
+        fastHash256(ByteBuffer.wrap(input).order(ByteOrder.LITTLE_ENDIAN), ByteBuffer.wrap(result).order(ByteOrder.LITTLE_ENDIAN));
+        return result;
+    }
+
+    /**
+     * fastHash256 of the input's remaining bytes, written as 8 ints at the output's position.
+     * Both buffers must be little-endian and their positions are left unchanged. The input is
+     * read in place, a partial last block as if zero-padded, and may be the output itself.
+     */
+    public static void fastHash256(ByteBuffer input, ByteBuffer output) {
+        int start = input.position();
+        int bl = input.remaining();
+        int words = ((bl + 31) / 32) * 8;
 
         int p0 = 0b01010101_01010101_01010101_01010101;
         int p1 = 0b00110011_00110011_00110011_00110011;
@@ -40,15 +72,15 @@ public class HashUtils {
         x = x ^ (x >> (1 + bl % 29));
 
         int i = 0;
-        while (i < data.length) {
-            int v0 = getSafe(data, i);
-            int v1 = getSafe(data, i + 1);
-            int v2 = getSafe(data, i + 2);
-            int v3 = getSafe(data, i + 3);
-            int v4 = getSafe(data, i + 4);
-            int v5 = getSafe(data, i + 5);
-            int v6 = getSafe(data, i + 6);
-            int v7 = getSafe(data, i + 7);
+        while (i < words) {
+            int v0 = wordAt(input, start, bl, i);
+            int v1 = wordAt(input, start, bl, i + 1);
+            int v2 = wordAt(input, start, bl, i + 2);
+            int v3 = wordAt(input, start, bl, i + 3);
+            int v4 = wordAt(input, start, bl, i + 4);
+            int v5 = wordAt(input, start, bl, i + 5);
+            int v6 = wordAt(input, start, bl, i + 6);
+            int v7 = wordAt(input, start, bl, i + 7);
 
             x = x ^ (v0 ^ v1 ^ v2 ^ v3 ^ v4 ^ v5 ^ v6 ^ v7);
             x = x ^ 0x55555555;
@@ -70,15 +102,27 @@ public class HashUtils {
             i += 8;
         }
 
-        int[] result = new int[] { p0, p1, p2, p3, p4, p5, p6, p7 };
-        return toByteArray(result);
+        int out = output.position();
+        output.putInt(out, p0);
+        output.putInt(out + 4, p1);
+        output.putInt(out + 8, p2);
+        output.putInt(out + 12, p3);
+        output.putInt(out + 16, p4);
+        output.putInt(out + 20, p5);
+        output.putInt(out + 24, p6);
+        output.putInt(out + 28, p7);
     }
 
-    private static int getSafe(int[] data, int index) {
-        return (index < data.length) ? data[index] : 0;
+    // Little-endian word of the input, bytes past its length read as 0
+    private static int wordAt(ByteBuffer input, int start, int length, int index) {
+        int offset = index * 4;
+        if (offset + 4 <= length) {
+            return input.getInt(start + offset);
+        }
+        int word = 0;
+        for (int b = offset; b < length; b++) {
+            word |= (input.get(start + b) & 0xFF) << (8 * (b - offset));
+        }
+        return word;
     }
-
-
-
-
 }
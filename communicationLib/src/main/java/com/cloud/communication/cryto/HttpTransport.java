@@ -0,0 +1,63 @@
+package com.cloud.communication.cryto;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import java.util.concurrent.TimeUnit;
+
+// Transport to an HTTP proxy at the given base URL
+public class HttpTransport implements Transport {
+
+    private static final long LONG_POLL_TIMEOUT_SECONDS = 90;
+
+    private final String proxyUrl;
+    private final HttpUrl dataUrl;
+    private final OkHttpClient client;
+    private OkHttpClient longPollClient; // guarded by this
+
+    public HttpTransport(String proxyUrl, TransportProfile profile) {
+        this(proxyUrl, profile.newClient(RequestManager.transportEvents()));
+    }
+
+    HttpTransport(String proxyUrl, OkHttpClient client) {
+        this.proxyUrl = proxyUrl;
+        this.dataUrl = HttpUrl.parse(proxyUrl + "/data");
+        this.client = client;
+    }
+
+    public String getProxyUrl() {
+        return proxyUrl;
+    }
+
+    OkHttpClient client() {
+        return client;
+    }
+
+    @Override
+    public HttpUrl dataUrl() {
+        return dataUrl;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        return client.newCall(request);
+    }
+
+    @Override
+    public Call newLongPollCall(Request request) {
+        return longPollClient().newCall(request);
+    }
+
+    // Derived from the request client, so the long poll reuses its connections
+    private synchronized OkHttpClient longPollClient() {
+        if (longPollClient == null) {
+            longPollClient = client.newBuilder()
+                    .readTimeout(LONG_POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .callTimeout(0, TimeUnit.SECONDS)
+                    .build();
+        }
+        return longPollClient;
+    }
+}
@@ -0,0 +1,91 @@
+package com.cloud.communication.cryto;
+
+import java.security.KeyPair;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RSA keypairs generated ahead of time, so starting a session does not wait for key generation.
+ * Taken keypairs are replaced one at a time on a low-priority background thread.
+ */
+public class KeyPairPool {
+
+    private final int capacity;
+    private final Queue<KeyPair> ready = new ConcurrentLinkedQueue<>();
+    // Ready keypairs plus those being generated, never above capacity
+    private final AtomicInteger filling = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final ExecutorService refiller = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "keypair-pool");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    public KeyPairPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be >= 1");
+        }
+        this.capacity = capacity;
+    }
+
+    // Starts generating keypairs in the background until the pool is full, e.g. when a QR scanner opens
+    public void prefill() {
+        while (true) {
+            int count = filling.get();
+            if (count >= capacity) return;
+            if (filling.compareAndSet(count, count + 1)) {
+                refiller.execute(this::generate);
+            }
+        }
+    }
+
+    /**
+     * Completes with a ready keypair, or with one generated on the given executor when the pool
+     * is empty. Either way the pool is refilled afterwards.
+     */
+    public CompletableFuture<KeyPair> take(Executor executor) {
+        KeyPair keyPair = ready.poll();
+        if (keyPair != null) {
+            hits.incrementAndGet();
+            filling.decrementAndGet();
+            prefill();
+            return CompletableFuture.completedFuture(keyPair);
+        }
+
+        misses.incrementAndGet();
+        return CompletableFuture.supplyAsync(RSAKeyManager::newKeyPair, executor)
+                .whenComplete((generated, error) -> prefill());
+    }
+
+    public int getAvailable() {
+        return ready.size();
+    }
+
+    // Takes served from the pool
+    public long getHits() {
+        return hits.get();
+    }
+
+    // Takes that had to wait for a new keypair
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void generate() {
+        try {
+            ready.add(RSAKeyManager.newKeyPair());
+        } catch (RuntimeException e) {
+            filling.decrementAndGet();
+            e.printStackTrace();
+        }
+    }
+}
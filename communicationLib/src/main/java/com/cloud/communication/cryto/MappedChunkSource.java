@@ -0,0 +1,104 @@
+package com.cloud.communication.cryto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves chunks as slices of read-only memory-mapped windows over the file.
+ * Windows are aligned to chunk boundaries so a chunk never spans two mappings,
+ * and only one window is kept mapped at a time.
+ */
+public class MappedChunkSource implements ChunkSource {
+
+    private static final int CHUNKS_PER_WINDOW = 32;
+
+    // Counters shared by all mapped uploads, for comparing against the positional-read path
+    private static final AtomicLong mapCount = new AtomicLong();
+    private static final AtomicLong unmapCount = new AtomicLong();
+    private static final AtomicLong bytesMapped = new AtomicLong();
+
+    private final FileChannel channel;
+    private final long length;
+    private final int chunkSize;
+    private final long windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart = -1;
+
+    public MappedChunkSource(Path path, int chunkSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.length = channel.size();
+        this.chunkSize = chunkSize;
+        this.windowSize = (long) chunkSize * Math.max(1, Math.min(CHUNKS_PER_WINDOW, Integer.MAX_VALUE / chunkSize));
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    // Slices keep their mapping alive after the window moves on
+    @Override
+    public boolean reusesBuffer() {
+        return false;
+    }
+
+    @Override
+    public synchronized ByteBuffer readChunk(int chunkNumber) throws IOException {
+        long position = chunkPosition(chunkNumber);
+        int toTake = chunkLength(chunkNumber);
+
+        long start = position - position % windowSize;
+        if (window == null || start != windowStart) {
+            releaseWindow();
+            long size = Math.min(windowSize, length - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            windowStart = start;
+            mapCount.incrementAndGet();
+            bytesMapped.addAndGet(size);
+        }
+
+        ByteBuffer chunk = window.duplicate();
+        int offset = (int) (position - windowStart);
+        chunk.position(offset);
+        chunk.limit(offset + toTake);
+        return chunk.slice();
+    }
+
+    // The mapping itself is released by the GC once no slice references it
+    private void releaseWindow() {
+        if (window != null) {
+            window = null;
+            windowStart = -1;
+            unmapCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        releaseWindow();
+        channel.close();
+    }
+
+    public static long getMapCount() {
+        return mapCount.get();
+    }
+
+    public static long getUnmapCount() {
+        return unmapCount.get();
+    }
+
+    public static long getBytesMapped() {
+        return bytesMapped.get();
+    }
+}
@@ -1,31 +1,37 @@
 package com.cloud.communication.cryto;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
 import static com.cloud.communication.cryto.ConversionUtils.byteArrayToHex;
 import static com.cloud.communication.cryto.ConversionUtils.int32ToBuffer;
 import static com.cloud.communication.cryto.ConversionUtils.joinBuffers;
+import static com.cloud.communication.cryto.ConversionUtils.toArray;
 import static com.cloud.communication.cryto.CryptoUtils.alertBox;
 import static com.cloud.communication.cryto.HashUtils.hash256;
-import static com.cloud.communication.cryto.RequestManager.executeRequest;
 import static com.cloud.communication.cryto.encryption.AesEncryption.createKey;
 
 public class Pairing {
-    public static void Pair(List<byte[]> params) {
-        byte[] clientIdBytes = params.get(0);
-        byte[] deviceIV = params.get(2);
-        byte[] auth = params.get(3);
+    public static void Pair(List<ByteBuffer> params) {
+        Pair(SessionManager.getCurrentClient(), params);
+    }
+
+    static void Pair(SessionClient client, List<ByteBuffer> params) {
+        byte[] clientIdBytes = toArray(params.get(0));
+        byte[] deviceIV = toArray(params.get(2));
+        byte[] auth = toArray(params.get(3));
         String clientIdHex = byteArrayToHex(clientIdBytes);
 
-        var session = SessionManager.getCurrentSession();
+        var session = client.getSession();
         if (!clientIdHex.equals(session.getClientId())) {
             alertBox("Wrong connection, key verification failed!");
         } else if (session.getDeviceKey() != null) {
             alertBox("Attempt to change the encryption key!");
         } else {
-            byte[] deviceKeyBytes = params.get(1);
-            if (deviceKeyBytes.length > 0) {
+            if (params.get(1).hasRemaining()) {
+                // Kept by the session, so copied out of the response buffer
+                byte[] deviceKeyBytes = toArray(params.get(1));
                 session.setEncryptionType("aes");
                 session.setDeviceKey(deviceKeyBytes);
                 try {
@@ -36,15 +42,21 @@ public class Pairing {
                     // Handle exception
                 }
             } else {
+                // No device key: the IV sent with the pairing keys the xorAB keystream
                 session.setEncryptionType("xorAB");
+                session.setIV(deviceIV);
             }
         }
         // Authentication
-        authenticate(auth);
+        authenticate(client, auth);
     }
 
 
     public static void authenticate(byte[] auth) {
+        authenticate(SessionManager.getCurrentClient(), auth);
+    }
+
+    static void authenticate(SessionClient client, byte[] auth) {
         //TODO: take pin from the user
         int pin = 762836;
 
@@ -53,6 +65,6 @@ public class Pairing {
 
         byte[] hash = hash256(authentication);
         byte[] verify = Arrays.copyOfRange(hash, 0, 4);
-        executeRequest(Command.Authentication.getId(), verify);
+        client.executeRequest(Command.Authentication.getId(), verify);
     }
 }
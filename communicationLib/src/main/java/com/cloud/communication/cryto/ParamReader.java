@@ -0,0 +1,160 @@
+package com.cloud.communication.cryto;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Reads a response in the splitData layout, [commandId][len][param][len][param]..., little-endian,
+ * from a stream, one param at a time. Large params can be transferred to a file or channel
+ * without being held in memory.
+ */
+public class ParamReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int remaining; // Unread bytes of the current param
+    private int index = -1;
+    private boolean eof;
+
+    public ParamReader(InputStream in) {
+        this.in = in;
+    }
+
+    public int readCommandId() throws IOException {
+        int commandId = readIntLE();
+        if (eof) {
+            throw new EOFException("Response has no command id");
+        }
+        return commandId;
+    }
+
+    /**
+     * Moves to the next param, skipping what is left of the current one.
+     * Returns the param length, or -1 when the response has no more params.
+     */
+    public int nextParam() throws IOException {
+        skipParam();
+        int length = readIntLE();
+        if (eof) {
+            return -1;
+        }
+        if (length < 0) {
+            throw new IOException("Invalid param length: " + length);
+        }
+        remaining = length;
+        index++;
+        return length;
+    }
+
+    // Index of the current param, starting at 0
+    public int paramIndex() {
+        return index;
+    }
+
+    public byte[] readParam() throws IOException {
+        byte[] param = new byte[remaining];
+        readFully(param, 0, param.length);
+        remaining = 0;
+        return param;
+    }
+
+    public long transferParam(OutputStream out) throws IOException {
+        long transferred = 0;
+        while (remaining > 0) {
+            int read = readSome(Math.min(remaining, buffer.length));
+            out.write(buffer, 0, read);
+            transferred += read;
+        }
+        return transferred;
+    }
+
+    public long transferParam(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return transferParam(channel, 0);
+        }
+    }
+
+    // Writes the current param at the given position, the channel position is left unchanged
+    public long transferParam(FileChannel channel, long position) throws IOException {
+        long transferred = 0;
+        while (remaining > 0) {
+            int read = readSome(Math.min(remaining, buffer.length));
+            ByteBuffer src = ByteBuffer.wrap(buffer, 0, read);
+            while (src.hasRemaining()) {
+                transferred += channel.write(src, position + transferred);
+            }
+        }
+        return transferred;
+    }
+
+    public void skipParam() throws IOException {
+        while (remaining > 0) {
+            readSome(Math.min(remaining, buffer.length));
+        }
+    }
+
+    // The remaining params, read into one array and returned as views of it
+    public List<ByteBuffer> readAll() throws IOException {
+        skipParam();
+        try {
+            return CryptoUtils.splitParams(ByteBuffer.wrap(in.readAllBytes()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed response: " + e.getMessage(), e);
+        }
+    }
+
+    // Drains what a handler left unread, so a decrypting stream ends its cipher operation
+    // and the connection can be reused, then closes the stream
+    @Override
+    public void close() throws IOException {
+        try {
+            while (in.read(buffer) >= 0) {
+                // Discarded
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    // Reads a little-endian int, setting eof when the stream ends before its first byte
+    private int readIntLE() throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            eof = true;
+            return -1;
+        }
+        readFully(buffer, 0, 3);
+        return first | (buffer[0] & 0xFF) << 8 | (buffer[1] & 0xFF) << 16 | (buffer[2] & 0xFF) << 24;
+    }
+
+    private int readSome(int length) throws IOException {
+        int read = in.read(buffer, 0, length);
+        if (read < 0) {
+            throw new EOFException("Response ended inside a param");
+        }
+        remaining -= read;
+        return read;
+    }
+
+    private void readFully(byte[] target, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = in.read(target, offset, length);
+            if (read < 0) {
+                throw new EOFException("Response ended inside a param");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.cloud.communication.cryto;
+
+import static com.cloud.communication.cryto.CryptoUtils.alertBox;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Persistent GetPushNotifications channel. A long-poll GET is kept open on its own thread,
+ * outside the request queue and its concurrency limit, and reopened as soon as it ends.
+ * The transport gives it longer read timeouts than the requests.
+ * The body may carry several events, one Base64 message per line, each dispatched as soon as
+ * its line arrives, so a streaming response delivers any number of events on one call.
+ * Events reach the handlers registered with the current session's dispatcher.
+ */
+public class PushChannel {
+
+    private static final long MIN_BACKOFF_MILLIS = 1_000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private static final Object lock = new Object();
+    // The polling thread, a thread left over from before a stop exits when it sees it was replaced
+    private static volatile Thread thread;
+    private static volatile Call currentCall;
+
+
+    public static void start() {
+        synchronized (lock) {
+            if (thread != null) return;
+            Thread poller = new Thread(PushChannel::pollLoop, "push-channel");
+            poller.setDaemon(true);
+            thread = poller;
+            poller.start();
+        }
+    }
+
+    public static void stop() {
+        synchronized (lock) {
+            if (thread == null) return;
+            Thread poller = thread;
+            thread = null;
+            Call call = currentCall;
+            if (call != null) {
+                call.cancel();
+            }
+            poller.interrupt();
+        }
+    }
+
+    public static boolean isRunning() {
+        return thread != null;
+    }
+
+    private static void pollLoop() {
+        long backoff = MIN_BACKOFF_MILLIS;
+        while (isCurrent()) {
+            boolean ok;
+            try {
+                ok = poll();
+            } catch (IOException e) {
+                if (!isCurrent()) return; // Cancelled by stop
+                System.out.println("Push channel error: " + e.getMessage());
+                ok = false;
+            }
+
+            if (ok) {
+                backoff = MIN_BACKOFF_MILLIS;
+                continue;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    private static boolean isCurrent() {
+        return thread == Thread.currentThread();
+    }
+
+    // One long-poll call, returns false when it should be retried after a backoff
+    private static boolean poll() throws IOException {
+        Request.Builder builder = RequestManager.newRequestBuilder(Command.GetPushNotifications.getId());
+        if (builder == null) {
+            alertBox("Invalid proxy URL");
+            return false;
+        }
+
+        Call call = RequestManager.transport().newLongPollCall(builder.get().build());
+        currentCall = call;
+        try (Response response = call.execute()) {
+            int code = response.code();
+            if (code == 204 || code == 408) {
+                return true; // Poll ended without events
+            }
+            if (code != 200) {
+                System.out.println("Push channel HTTP error code: " + code);
+                return false;
+            }
+
+            ResponseBody body = response.body();
+            if (body == null) {
+                return true;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(body.byteStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    RequestManager.handleMessage(line.trim());
+                }
+            }
+            return true;
+        } finally {
+            currentCall = null;
+        }
+    }
+}
@@ -17,30 +17,33 @@ import static com.cloud.communication.cryto.encryption.RsaEncryption.encryptData
 public class QrCodeHandler {
     public static void onQrCodeAcquires(String qrCode) {
         SessionManager.resetSession()
-                .thenRun(() -> {
-                    byte[] qr;
-                    try {
-                        qr = base64ToBuffer(qrCode);
-                    } catch (Exception e) {
-                        alertBox("Wrong QR code!");
-                        return;
-                    }
-
-                    int offset = 0;
-                    int type = qr[offset] & 0xFF;
-                    if(type != 2){
-                        alertBox("QR code format not supported!");
-                        return;
-                    }
-                    offset++;
-                    handleQrCode(qr, offset);
-                });
+                .thenRun(() -> onQrCodeAcquires(SessionManager.getCurrentClient(), qrCode));
+    }
+
+    // Pairs the client, whose keys must already be generated, with the cloud of the QR code
+    public static void onQrCodeAcquires(SessionClient client, String qrCode) {
+        byte[] qr;
+        try {
+            qr = base64ToBuffer(qrCode);
+        } catch (Exception e) {
+            alertBox("Wrong QR code!");
+            return;
+        }
+
+        int offset = 0;
+        int type = qr[offset] & 0xFF;
+        if(type != 2){
+            alertBox("QR code format not supported!");
+            return;
+        }
+        offset++;
+        handleQrCode(client, qr, offset);
     }
 
 
-    private static void handleQrCode(byte[] qr, int offsetStart) {
+    private static void handleQrCode(SessionClient client, byte[] qr, int offsetStart) {
         int offset = offsetStart;
-        Session session = SessionManager.getCurrentSession();
+        Session session = client.getSession();
 
         session.setQRkey(Arrays.copyOfRange(qr, offset, offset + 24));
         offset += 24;
@@ -51,7 +54,7 @@ public class QrCodeHandler {
         session.setEntryPoint(bufferToString(Arrays.copyOfRange(qr, offset, qr.length)));
 //        entryPointToProxy(session.getEntryPoint());
 
-        RequestManager.executeRequest(Command.GetEncryptedQR.getId(), null);
+        client.executeRequest(Command.GetEncryptedQR.getId(), null);
     }
 
 
@@ -60,9 +63,13 @@ public class QrCodeHandler {
     static short thumbnailSize = 80;    // note: use `short` since it’s int16 in JS
 
     public static void setClient(PublicKey rsaPubKey) throws Exception {
+        setClient(SessionManager.getCurrentClient(), rsaPubKey);
+    }
+
+    static void setClient(SessionClient client, PublicKey rsaPubKey) throws Exception {
 
-        SessionManager.getCurrentSession().setDeviceKey(null);
-        var publicKeyB64 = SessionManager.getCurrentSession().getPublicKeyB64();
+        client.getSession().setDeviceKey(null);
+        var publicKeyB64 = client.getSession().getPublicKeyB64();
         var clientPublicKey = base64ToBuffer(publicKeyB64);
 
         // Prepare clientSetting buffer: chunkSize (int32), thumbnailSize (int16), then clientPublicKey bytes
@@ -77,7 +84,7 @@ public class QrCodeHandler {
         byte[] clientSettingEncrypted = encryptData(rsaPubKey, clientSetting);
 
         // Send request (assume executeRequest is a method you have)
-        RequestManager.executeRequest(Command.SetClient.getId(), clientSettingEncrypted);
+        client.executeRequest(Command.SetClient.getId(), clientSettingEncrypted);
 
 //        executeRequest(Command.SetClient.getId(), clientSettingEncrypted);
     }
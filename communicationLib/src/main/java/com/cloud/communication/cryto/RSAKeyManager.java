@@ -22,17 +22,31 @@ public class RSAKeyManager {
 
     private static final ExecutorService executor = Executors.newCachedThreadPool();
 
+    private static final int KEY_POOL_SIZE = 2;
+    private static final KeyPairPool keyPool = new KeyPairPool(KEY_POOL_SIZE);
+
     // Generate RSA keypair asynchronously
     public static CompletableFuture<KeyPair> generateKeyPair() {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-                keyGen.initialize(new RSAKeyGenParameterSpec(2048, RSAKeyGenParameterSpec.F4));
-                return keyGen.generateKeyPair();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        }, executor);
+        return CompletableFuture.supplyAsync(RSAKeyManager::newKeyPair, executor);
+    }
+
+    // Pre-generated keypair for a new session, generated now only when the pool is empty
+    public static CompletableFuture<KeyPair> takeKeyPair() {
+        return keyPool.take(executor);
+    }
+
+    public static KeyPairPool getKeyPool() {
+        return keyPool;
+    }
+
+    static KeyPair newKeyPair() {
+        try {
+            KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+            keyGen.initialize(new RSAKeyGenParameterSpec(2048, RSAKeyGenParameterSpec.F4));
+            return keyGen.generateKeyPair();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     // Export public key modulus as Base64 (like exportCryptoKey)
@@ -0,0 +1,38 @@
+package com.cloud.communication.cryto;
+
+// Dispatch classes of the request queue, served in declaration order
+public enum RequestPriority {
+    // Pairing and login, everything else waits on these
+    HANDSHAKE(16),
+    // Small metadata commands
+    NORMAL(256),
+    // File chunks, kept short since each holds up to a 1 MB payload
+    BULK(8);
+
+    private final int defaultCapacity;
+
+    RequestPriority(int defaultCapacity) {
+        this.defaultCapacity = defaultCapacity;
+    }
+
+    public int getDefaultCapacity() {
+        return defaultCapacity;
+    }
+
+    public static RequestPriority forCommand(int commandId) {
+        Command command = Command.fromId(commandId);
+        if (command == null) return NORMAL;
+        switch (command) {
+            case SetClient:
+            case GetEncryptedQR:
+            case Pair:
+            case Authentication:
+                return HANDSHAKE;
+            case SetFile:
+            case GetFile:
+                return BULK;
+            default:
+                return NORMAL;
+        }
+    }
+}
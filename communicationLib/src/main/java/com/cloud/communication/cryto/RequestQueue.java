@@ -0,0 +1,185 @@
+package com.cloud.communication.cryto;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded request queue with one lock-free FIFO per {@link RequestPriority}.
+ * Each class has its own capacity, so a backlog of file chunks never blocks a handshake.
+ */
+public class RequestQueue {
+
+    private final Lane[] lanes;
+
+    public RequestQueue() {
+        this(-1);
+    }
+
+    // A non-positive capacity uses each priority's default capacity
+    public RequestQueue(int capacityPerPriority) {
+        RequestPriority[] priorities = RequestPriority.values();
+        lanes = new Lane[priorities.length];
+        for (RequestPriority priority : priorities) {
+            int capacity = capacityPerPriority > 0 ? capacityPerPriority : priority.getDefaultCapacity();
+            lanes[priority.ordinal()] = new Lane(priority, capacity);
+        }
+    }
+
+    /**
+     * Adds a request, waiting up to the timeout for room in its priority class.
+     * Returns false if the class stayed full.
+     */
+    public boolean offer(int commandId, byte[] data, long timeout, TimeUnit unit) throws InterruptedException {
+        return offer(commandId, data, 1, timeout, unit);
+    }
+
+    public boolean offer(int commandId, byte[] data, int attempt, long timeout, TimeUnit unit) throws InterruptedException {
+        ByteBuffer[] payload = data != null ? new ByteBuffer[]{ByteBuffer.wrap(data)} : new ByteBuffer[0];
+        return offer(commandId, payload, attempt, null, timeout, unit);
+    }
+
+    /**
+     * The payload buffers are kept as they are and must not be modified until the request completes.
+     * When response is not null it is completed with the params of this request's response.
+     */
+    public boolean offer(int commandId, ByteBuffer[] payload, int attempt, CompletableFuture<List<ByteBuffer>> response,
+                         long timeout, TimeUnit unit) throws InterruptedException {
+        Lane lane = lanes[RequestPriority.forCommand(commandId).ordinal()];
+        if (!lane.permits.tryAcquire(timeout, unit)) {
+            lane.rejected.incrementAndGet();
+            return false;
+        }
+        lane.queue.add(new QueuedRequest(commandId, payload, attempt, response, System.nanoTime(), true));
+        lane.depth.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Puts an admitted request back at the head of its priority class as its next attempt, e.g.
+     * after a 503. It takes no capacity, so a full class cannot drop it.
+     */
+    public void requeue(QueuedRequest request) {
+        Lane lane = lanes[RequestPriority.forCommand(request.commandId).ordinal()];
+        lane.queue.addFirst(new QueuedRequest(request.commandId, request.payload, request.attempt + 1,
+                request.response, System.nanoTime(), false));
+        lane.depth.incrementAndGet();
+    }
+
+    // Next request in priority order, FIFO within a class, or null when empty
+    public QueuedRequest poll() {
+        for (Lane lane : lanes) {
+            QueuedRequest request = lane.queue.poll();
+            if (request != null) {
+                lane.depth.decrementAndGet();
+                if (request.holdsPermit) {
+                    lane.permits.release();
+                }
+                lane.recordWait(System.nanoTime() - request.enqueuedAt);
+                return request;
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        for (Lane lane : lanes) {
+            if (!lane.queue.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    public List<RequestQueueMetrics> getMetrics() {
+        List<RequestQueueMetrics> metrics = new ArrayList<>(lanes.length);
+        for (Lane lane : lanes) {
+            long dispatched = lane.dispatched.get();
+            long averageWait = dispatched > 0 ? lane.totalWaitNanos.get() / dispatched : 0;
+            metrics.add(new RequestQueueMetrics(lane.priority, lane.depth.get(), dispatched, lane.rejected.get(),
+                    TimeUnit.NANOSECONDS.toMicros(averageWait), TimeUnit.NANOSECONDS.toMicros(lane.maxWaitNanos.get())));
+        }
+        return metrics;
+    }
+
+    public static class QueuedRequest {
+        final int commandId;
+        final ByteBuffer[] payload;
+        final int attempt;
+        final CompletableFuture<List<ByteBuffer>> response;
+        final long enqueuedAt;
+        // False for requeued requests, which did not take a capacity permit
+        final boolean holdsPermit;
+
+        QueuedRequest(int commandId, ByteBuffer[] payload, int attempt, CompletableFuture<List<ByteBuffer>> response,
+                      long enqueuedAt, boolean holdsPermit) {
+            this.commandId = commandId;
+            this.payload = payload;
+            this.attempt = attempt;
+            this.response = response;
+            this.enqueuedAt = enqueuedAt;
+            this.holdsPermit = holdsPermit;
+        }
+
+        public int getCommandId() {
+            return commandId;
+        }
+
+        public ByteBuffer[] getPayload() {
+            return payload;
+        }
+
+        // The payload as one array, copied only when it is made of several buffers
+        public byte[] getData() {
+            if (payload.length == 1 && payload[0].hasArray() && payload[0].arrayOffset() == 0
+                    && payload[0].position() == 0 && payload[0].remaining() == payload[0].array().length) {
+                return payload[0].array();
+            }
+            int length = 0;
+            for (ByteBuffer part : payload) {
+                length += part.remaining();
+            }
+            ByteBuffer joined = ByteBuffer.allocate(length);
+            for (ByteBuffer part : payload) {
+                joined.put(part.duplicate());
+            }
+            return joined.array();
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        // Future of the caller waiting for this request's response, null when the response goes to the command's handler
+        public CompletableFuture<List<ByteBuffer>> getResponse() {
+            return response;
+        }
+    }
+
+    private static class Lane {
+        final RequestPriority priority;
+        final Deque<QueuedRequest> queue = new ConcurrentLinkedDeque<>();
+        final Semaphore permits;
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicLong dispatched = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong totalWaitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+
+        Lane(RequestPriority priority, int capacity) {
+            this.priority = priority;
+            this.permits = new Semaphore(capacity);
+        }
+
+        void recordWait(long waitNanos) {
+            dispatched.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.cloud.communication.cryto;
+
+// Point-in-time view of one priority class of the request queue
+public class RequestQueueMetrics {
+    private final RequestPriority priority;
+    private final int depth;
+    private final long dispatched;
+    private final long rejected;
+    private final long averageWaitMicros;
+    private final long maxWaitMicros;
+
+    public RequestQueueMetrics(RequestPriority priority, int depth, long dispatched, long rejected,
+                               long averageWaitMicros, long maxWaitMicros) {
+        this.priority = priority;
+        this.depth = depth;
+        this.dispatched = dispatched;
+        this.rejected = rejected;
+        this.averageWaitMicros = averageWaitMicros;
+        this.maxWaitMicros = maxWaitMicros;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getDispatched() {
+        return dispatched;
+    }
+
+    // Requests refused because the queue was full
+    public long getRejected() {
+        return rejected;
+    }
+
+    // Time between enqueue and dispatch
+    public long getAverageWaitMicros() {
+        return averageWaitMicros;
+    }
+
+    public long getMaxWaitMicros() {
+        return maxWaitMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestQueueMetrics{" + priority + ": depth=" + depth + ", dispatched=" + dispatched
+                + ", rejected=" + rejected + ", avgWait=" + averageWaitMicros + "us, maxWait=" + maxWaitMicros + "us}";
+    }
+}
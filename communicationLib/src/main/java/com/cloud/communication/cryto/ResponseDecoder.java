@@ -0,0 +1,10 @@
+package com.cloud.communication.cryto;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Turns the params of a command's response into a typed result
+@FunctionalInterface
+public interface ResponseDecoder<T> {
+    T decode(List<ByteBuffer> params) throws Exception;
+}
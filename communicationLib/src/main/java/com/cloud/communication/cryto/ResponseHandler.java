@@ -0,0 +1,13 @@
+package com.cloud.communication.cryto;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Handles the params of a response that no request future is waiting for.
+ * Runs on the response executor; the params are views of the decrypted response.
+ */
+@FunctionalInterface
+public interface ResponseHandler {
+    void handle(int commandId, List<ByteBuffer> params) throws Exception;
+}
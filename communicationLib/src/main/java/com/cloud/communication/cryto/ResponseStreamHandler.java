@@ -0,0 +1,12 @@
+package com.cloud.communication.cryto;
+
+import java.io.IOException;
+
+/**
+ * Handles the params of a response while it is still being read and decrypted.
+ * Runs on the HTTP callback thread, the reader is positioned after the command id.
+ */
+@FunctionalInterface
+public interface ResponseStreamHandler {
+    void handle(int commandId, ParamReader params) throws IOException;
+}
@@ -18,6 +18,7 @@ public class Session {
     private PublicKey publicKey;
     private PrivateKey privateKey;
     private SecretKey symmetricKey;
+    private int capabilities;
 
     public Session() {
         this(null);
@@ -69,6 +70,11 @@ public class Session {
         this.encryptionType = encryptionType;
     }
 
+    // Paired without a device key, requests and responses are XORed with the xorAB keystream of the IV
+    public boolean isXorAB() {
+        return "xorAB".equals(encryptionType);
+    }
+
     public byte[] getDeviceKey() {
         return deviceKey;
     }
@@ -124,4 +130,12 @@ public class Session {
     public void setSymmetricKey(SecretKey symmetricKey) {
         this.symmetricKey = symmetricKey;
     }
+
+    public int getCapabilities() {
+        return capabilities;
+    }
+
+    public void setCapabilities(int capabilities) {
+        this.capabilities = capabilities;
+    }
 }
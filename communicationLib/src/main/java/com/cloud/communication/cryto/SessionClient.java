@@ -0,0 +1,608 @@
+package com.cloud.communication.cryto;
+
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static com.cloud.communication.cryto.Command.getCommandName;
+import static com.cloud.communication.cryto.ConversionUtils.base64ToBuffer;
+import static com.cloud.communication.cryto.ConversionUtils.bufferToString;
+import static com.cloud.communication.cryto.ConversionUtils.int32ToBuffer;
+import static com.cloud.communication.cryto.CryptoUtils.alertBox;
+import static com.cloud.communication.cryto.CryptoUtils.splitParams;
+import static com.cloud.communication.cryto.encryption.RsaEncryption.createRsaPublicKey;
+import static com.cloud.communication.cryto.encryption.XorEncryption.decryptXorAB;
+
+import com.cloud.communication.cryto.encryption.AesEncryption;
+import com.cloud.communication.cryto.encryption.RsaEncryption;
+import com.cloud.communication.cryto.encryption.XorEncryption;
+
+/**
+ * Connection to one paired cloud: its session keys, request queue, concurrency limit, response
+ * handlers and uploads. Clients only share the transport, so several clouds can be used in
+ * parallel and replacing one session leaves requests of the others untouched.
+ * Clients are opened through {@link SessionManager}.
+ */
+public class SessionClient {
+
+    private static final long ENQUEUE_TIMEOUT_SECONDS = 30;
+
+    // The proxy answers 503 above 5 concurrent requests per client
+    private static final int maxConcurrentRequest = 5;
+    private static final int MAX_OVERLOAD_ATTEMPTS = 3;
+
+    // Executor for background tasks (like Kotlin coroutines), shared by all clients
+    private static final ExecutorService executor = Executors.newCachedThreadPool();
+    private static final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "request-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Session session;
+    private final RequestQueue spooler = new RequestQueue();
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, maxConcurrentRequest);
+    private final CommandDispatcher dispatcher = new CommandDispatcher();
+    private final CommandBatcher batcher = new CommandBatcher(this);
+
+    // Created with the first upload, so idle clients own no threads
+    private volatile UploadScheduler uploads;
+    // Active downloads by cloud file name, which is all a GetFile response identifies them by
+    private final Map<String, Download> downloads = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    SessionClient(Session session) {
+        this.session = session;
+        dispatcher.setHandler(Command.Authentication, (commandId, params) -> AuthSuccess());
+        dispatcher.setHandler(Command.Pair, (commandId, params) -> Pairing.Pair(this, params));
+        dispatcher.setHandler(Command.SetFile, (commandId, params) -> FileUploader.handleServerUploadResponse(this, params));
+        dispatcher.setHandler(Command.GetFile, (commandId, params) -> FileDownloader.handleServerDownloadResponse(this, params));
+        // Chunk data goes from the decrypting stream to the part file without being buffered whole
+        dispatcher.setStreamHandler(Command.GetFile, (commandId, reader) -> FileDownloader.onChunkResponse(this, reader));
+        dispatcher.setHandler(Command.Error, (commandId, params) ->
+                alertBox("Cloud error: " + (params.isEmpty() ? "unknown" : bufferToString(params.get(0)))));
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Queues a request behind earlier ones of the same priority. Blocks while that priority
+     * class is full and gives up after ENQUEUE_TIMEOUT_SECONDS, returning false.
+     */
+    public boolean enqueueRequest(Integer commandId, byte[] data) {
+        ByteBuffer[] payload = data != null ? new ByteBuffer[]{ByteBuffer.wrap(data)} : new ByteBuffer[0];
+        return enqueuePayload(commandId, payload);
+    }
+
+    // The payload is sent as the concatenation of the buffers, which must stay unchanged until then
+    public boolean enqueuePayload(Integer commandId, ByteBuffer... payload) {
+        return enqueue(commandId, payload, null);
+    }
+
+    public void executeRequest(Integer commandId, byte[] data) {
+        enqueueRequest(commandId, data);
+    }
+
+    public void executePayloadRequest(Integer commandId, ByteBuffer... payload) {
+        enqueuePayload(commandId, payload);
+    }
+
+    /**
+     * Sends the command and completes with the params of the response to this very request,
+     * which then bypasses the command's registered handler. Completes exceptionally when the
+     * request cannot be queued or sent, or the cloud answers with an error.
+     */
+    public CompletableFuture<List<ByteBuffer>> request(Command command, ByteBuffer... payload) {
+        CompletableFuture<List<ByteBuffer>> response = new CompletableFuture<>();
+        enqueue(command.getId(), payload, response);
+        return response;
+    }
+
+    public <T> CompletableFuture<T> request(Command command, ResponseDecoder<T> decoder, ByteBuffer... payload) {
+        return request(command, payload).thenApply(params -> {
+            try {
+                return decoder.decode(params);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private boolean enqueue(Integer commandId, ByteBuffer[] payload, CompletableFuture<List<ByteBuffer>> response) {
+        if (commandId == null) {
+            alertBox("Command does not exist");
+            if (response != null) response.completeExceptionally(new IllegalArgumentException("Command does not exist"));
+            return false;
+        }
+        if (closed) {
+            System.out.println("Session closed, dropped " + getCommandName(commandId));
+            if (response != null) response.completeExceptionally(new IOException("Session closed"));
+            return false;
+        }
+        try {
+            if (!spooler.offer(commandId, payload, 1, response, ENQUEUE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                alertBox("Request queue full, dropped " + getCommandName(commandId));
+                if (response != null) response.completeExceptionally(new IOException("Request queue full"));
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (response != null) response.completeExceptionally(e);
+            return false;
+        }
+        tryStartNext();
+        return true;
+    }
+
+    // Handlers for responses that no request future is waiting for
+    public CommandDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Registers a handler that reads the params of the given command straight from the decrypting
+     * stream, e.g. to write file content to disk. Pass null to buffer the params again.
+     */
+    public void setStreamHandler(Command command, ResponseStreamHandler handler) {
+        dispatcher.setStreamHandler(command, handler);
+    }
+
+    // Coalesces small commands of this session, used by CloudClient
+    public CommandBatcher getBatcher() {
+        return batcher;
+    }
+
+    public List<RequestQueueMetrics> getQueueMetrics() {
+        return spooler.getMetrics();
+    }
+
+    // Current adaptive limit on concurrent proxy requests
+    public int getConcurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    public int getInFlightRequests() {
+        return limiter.getInFlight();
+    }
+
+    // Uploads are queued on this session's worker pool, the returned id identifies the upload
+    public long startSendFile(File file, ChunkSourceType sourceType) {
+        String fullPath = file.getName(); // Or construct full path if needed
+        return uploads().submit(file, fullPath, sourceType);
+    }
+
+    public boolean cancelUpload(long uploadId) {
+        UploadScheduler scheduler = uploads;
+        return scheduler != null && scheduler.cancel(uploadId);
+    }
+
+    public UploadMetrics getUploadMetrics() {
+        return uploads().getMetrics();
+    }
+
+    UploadScheduler uploads() {
+        UploadScheduler scheduler = uploads;
+        if (scheduler == null) {
+            synchronized (this) {
+                scheduler = uploads;
+                if (scheduler == null) {
+                    if (closed) {
+                        throw new IllegalStateException("Session closed");
+                    }
+                    scheduler = FileUploader.newScheduler(this);
+                    uploads = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    UploadScheduler existingUploads() {
+        return uploads;
+    }
+
+    Map<String, Download> downloads() {
+        return downloads;
+    }
+
+    /**
+     * Stops accepting requests and stops the uploads, whose journaled progress is kept for the
+     * next session. Requests already queued still finish with this session's keys.
+     */
+    void close() {
+        UploadScheduler scheduler;
+        synchronized (this) {
+            closed = true;
+            scheduler = uploads;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private void tryStartNext() {
+        // Take a permit before taking a request, so the limit holds without a lock
+        while (!spooler.isEmpty() && limiter.tryAcquire()) {
+            RequestQueue.QueuedRequest nextRequest = spooler.poll();
+            if (nextRequest == null || isAbandoned(nextRequest)) {
+                limiter.release();
+                continue;
+            }
+            try {
+                sendRequest(nextRequest);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                fail(nextRequest, "Error sending " + getCommandName(nextRequest.getCommandId()) + ": " + e.getMessage());
+                limiter.release();
+            }
+        }
+    }
+
+    // Runs with a permit held; every path releases it exactly once through requestDone
+    private void sendRequest(RequestQueue.QueuedRequest queued) {
+        int commandId = queued.getCommandId();
+        Request.Builder requestBuilder = newRequestBuilder(commandId);
+        if (requestBuilder == null) {
+            fail(queued, "Invalid proxy URL");
+            requestDone();
+            return;
+        }
+
+        boolean isGet = commandId == Command.GetPushNotifications.getId();
+        if (isGet) {
+            getRequest(requestBuilder, queued);
+            return;
+        }
+
+
+        if (commandId == Command.SetClient.getId() || commandId == Command.GetEncryptedQR.getId()) {
+            postRequest(requestBuilder, queued.getData(), queued);
+            return;
+        }
+
+
+        if (session.getDeviceKey() == null && !session.isXorAB()) {
+            fail(queued, "Unregistered user. You need to log in to the server to initialize the encryption.");
+            requestDone();
+            return;
+        }
+
+
+        // Command id and payload are encrypted while OkHttp writes the body
+        byte[] cmdBuffer = int32ToBuffer(commandId);
+        RequestBody body = session.isXorAB()
+                ? new XorRequestBody(cmdBuffer, queued.getPayload(), session.getIV())
+                : new EncryptingRequestBody(cmdBuffer, queued.getPayload(), session.getSymmetricKey(), session.getIV());
+        getEnqueue(requestBuilder.post(body).build(), queued);
+    }
+
+    // Proxy request for the command with the session's query parameters and headers, null when the proxy URL is invalid
+    Request.Builder newRequestBuilder(int commandId) {
+        HttpUrl baseUrl = RequestManager.transport().dataUrl();
+        if (baseUrl == null) {
+            return null;
+        }
+
+        var urlBuilder = baseUrl.newBuilder();
+        urlBuilder.addQueryParameter("cid", session.getClientId());
+
+        if (commandId == Command.SetClient.getId() || commandId == Command.GetEncryptedQR.getId()) {
+            urlBuilder.addQueryParameter("sid", session.getServerId());
+            urlBuilder.addQueryParameter("purpose", getCommandName(commandId));
+            if (commandId == Command.SetClient.getId()) {
+                urlBuilder.addQueryParameter(ClientCapabilities.PARAMETER, String.valueOf(ClientCapabilities.SUPPORTED));
+            }
+        }
+
+        HttpUrl url = urlBuilder.build();
+        return new Request.Builder().url(url)
+                .header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/114.0.0.0 Safari/537.36")
+                .header("Accept", "*/*")
+                .header("Accept-Language", "en-US,en;q=0.9");
+    }
+
+    // Decrypts and dispatches a message that arrived outside the request queue
+    void handleMessage(String responseText) {
+        handleResponse(responseText, null);
+    }
+
+    private void getRequest(Request.Builder requestBuilder, RequestQueue.QueuedRequest queued) {
+        getEnqueue(requestBuilder.build(), queued);
+    }
+
+    private void postRequest(Request.Builder requestBuilder, byte[] data, RequestQueue.QueuedRequest queued) {
+        MediaType mediaType = MediaType.parse("application/octet-stream");
+        RequestBody body = RequestBody.create(data, mediaType);
+        Request request = requestBuilder.post(body).build();
+        getEnqueue(request, queued);
+    }
+
+    // Cancelled or timed out by the caller before it was sent
+    private static boolean isAbandoned(RequestQueue.QueuedRequest queued) {
+        return queued.getResponse() != null && queued.getResponse().isDone();
+    }
+
+    private void getEnqueue(Request request, RequestQueue.QueuedRequest queued) {
+        Call call = RequestManager.transport().newCall(request);
+        if (queued.getResponse() != null) {
+            queued.getResponse().whenComplete((params, error) -> {
+                if (queued.getResponse().isCancelled()) {
+                    call.cancel();
+                }
+            });
+        }
+        call.enqueue(new Callback() {
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                fail(queued, "HTTP Request error: " + e.getMessage());
+                requestDone();
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                // Closed whatever the status, an unread 503 body would hold its pooled connection
+                try (response) {
+                    handleHttpResponse(response, queued);
+                } finally {
+                    // The permit is held until the body has been read
+                    requestDone();
+                }
+            }
+        });
+    }
+
+    private void handleHttpResponse(Response response, RequestQueue.QueuedRequest queued) {
+        int code = response.code();
+        switch (code) {
+            case 404:
+                fail(queued, "Status 404: Cloud not found by SID. No cloud with this User ID has registered in the proxy.");
+                break;
+            case 503:
+                // The proxy's concurrency ceiling was hit: shrink our limit and try again later
+                limiter.onOverload();
+                retryLater(queued);
+                break;
+            case 421:
+                fail(queued, "Status 421: The cloud is not logged into the proxy. Please restart it.");
+                break;
+            case 200:
+                limiter.onSuccess();
+                handleSuccessfulResponse(response, queued);
+                break;
+            default:
+                fail(queued, "HTTP error code: " + code);
+                break;
+        }
+    }
+
+    private void retryLater(RequestQueue.QueuedRequest queued) {
+        if (queued.getAttempt() >= MAX_OVERLOAD_ATTEMPTS) {
+            fail(queued, "Status 503: Max request concurrent limit reached.");
+            return;
+        }
+        // Once the limiter's cooldown is over, so the retry does not land in the same overload burst.
+        // Ahead of requests queued since, without taking capacity again
+        retryTimer.schedule(() -> {
+            spooler.requeue(queued);
+            tryStartNext();
+        }, limiter.getCooldownRemainingNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private void handleSuccessfulResponse(Response response, RequestQueue.QueuedRequest queued) {
+        String purpose = response.request().url().queryParameter("purpose");
+        if (Command.SetClient.name().equals(purpose)) {
+            // Capabilities accepted by the cloud, absent header means none
+            int capabilities = ClientCapabilities.parse(response.header(ClientCapabilities.PARAMETER));
+            session.setCapabilities(capabilities);
+        }
+
+        try (ResponseBody body = response.body()) {
+            if (body == null) {
+                fail(queued, "Response body is null.");
+                return;
+            }
+
+            InputStream stream = new BufferedInputStream(body.byteStream());
+            stream.mark(1);
+            if (stream.read() < 0) {
+                fail(queued, "Response body is empty.");
+                return;
+            }
+            stream.reset();
+
+            if (isAesResponse() || isXorResponse()) {
+                // Decoded while the body is read: Base64 -> AES or xorAB -> params
+                readEncryptedResponse(stream, body.contentLength(), queued);
+                return;
+            }
+
+            String responseText = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+
+            // Handle response asynchronously
+            executor.submit(() -> handleResponse(responseText, queued));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(queued, "Error reading response body: " + e.getMessage());
+        }
+    }
+
+    private boolean isAesResponse() {
+        return session.getQRkey() == null && session.getSymmetricKey() != null && !session.isXorAB()
+                && (session.getDeviceKey() != null || session.getEncryptionType() != null);
+    }
+
+    private boolean isXorResponse() {
+        return session.getQRkey() == null && session.isXorAB() && session.getIV() != null;
+    }
+
+    private void readEncryptedResponse(InputStream base64, long contentLength, RequestQueue.QueuedRequest queued) throws IOException {
+        InputStream plain;
+        if (session.isXorAB()) {
+            plain = XorResponseStream.open(base64, contentLength, session.getIV());
+        } else try {
+            plain = AesEncryption.decryptingStream(Base64.getDecoder().wrap(base64), session.getSymmetricKey(), session.getIV());
+        } catch (Exception e) {
+            throw new IOException("Cannot initialize decryption", e);
+        }
+
+        try (ParamReader reader = new ParamReader(plain)) {
+            int commandId = reader.readCommandId();
+            ResponseStreamHandler handler = dispatcher.streamHandler(commandId);
+            if (handler != null && queued.getResponse() == null) {
+                handler.handle(commandId, reader);
+                return;
+            }
+
+            List<ByteBuffer> params = Command.Authentication.getId() == commandId ? List.of() : reader.readAll();
+            executor.submit(() -> onResponse(commandId, params, queued));
+        } catch (IOException | RuntimeException e) {
+            AesEncryption.resetDecryptCipher();
+            throw e;
+        }
+    }
+
+
+    private void handleResponse(String responseText, RequestQueue.QueuedRequest queued) {
+        try {
+            if (session.getQRkey() != null) {
+                getEncryptedQR(responseText);
+                complete(queued, List.of());
+            } else if (session.isXorAB()) {
+                byte[] decrypted = Base64.getDecoder().decode(responseText);
+                XorEncryption.xorAB(session.getIV(), ByteBuffer.wrap(decrypted));
+                onResponse(decrypted, queued);
+            } else if (session.getDeviceKey() != null || session.getEncryptionType() != null) {
+                var decrypted = AesEncryption.decryptData(base64ToBuffer(responseText), session.getSymmetricKey(), session.getIV());
+                onResponse(decrypted, queued);
+            } else {
+                var response = base64ToBuffer(responseText);
+                var decrypted = RsaEncryption.decryptData(session.getPrivateKey(), response);
+                onResponse(decrypted, queued);
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail(queued, "Error handling response: " + e.getMessage());
+        }
+    }
+
+    private static void complete(RequestQueue.QueuedRequest queued, List<ByteBuffer> params) {
+        if (queued != null && queued.getResponse() != null) {
+            queued.getResponse().complete(params);
+        }
+    }
+
+    // Reports the failure and fails the request's future, if any
+    private static void fail(RequestQueue.QueuedRequest queued, String message) {
+        if (queued != null && isAbandoned(queued)) {
+            return; // The caller already gave up on it
+        }
+        alertBox(message);
+        if (queued != null && queued.getResponse() != null) {
+            queued.getResponse().completeExceptionally(new IOException(message));
+        }
+    }
+
+    private void requestDone() {
+        limiter.release();
+        tryStartNext();
+    }
+
+
+    public void getEncryptedQR(String encryptedDataB64) throws Exception {
+        byte[] encryptedData = base64ToBuffer(encryptedDataB64);
+        byte[] decryptedData = decryptXorAB(session.getQRkey(), encryptedData);
+        session.setQRkey(null); // clear QR key
+
+        int offset = 0;
+        // First byte is 'type'
+        int type = decryptedData[offset] & 0xFF;
+        if (type != 2) {
+            throw new RuntimeException("QR code format not supported!");
+        }
+        offset += 1;
+
+        int mSize = 2048 / 8; // 256 bytes modulus size
+        byte[] modulus = Arrays.copyOfRange(decryptedData, offset, offset + mSize);
+        offset += mSize;
+        byte[] exponent = Arrays.copyOfRange(decryptedData, offset, offset + 3);
+        PublicKey rsaPubKey = createRsaPublicKey(modulus, exponent);
+        QrCodeHandler.setClient(this, rsaPubKey);
+    }
+
+
+    public void onResponse(byte[] binary) throws IOException {
+        onResponse(binary, null);
+    }
+
+    private void onResponse(byte[] binary, RequestQueue.QueuedRequest queued) throws IOException {
+        // First 4 bytes are the command id, little-endian, params are views of the rest
+        ByteBuffer buffer = ByteBuffer.wrap(binary).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < 4) {
+            throw new IOException("Response has no command id");
+        }
+        int commandId = buffer.getInt();
+        if (Command.Authentication.getId() == commandId) {
+            onResponse(commandId, List.of(), queued);
+            return;
+        }
+        try {
+            onResponse(commandId, splitParams(buffer), queued);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed response: " + e.getMessage(), e);
+        }
+    }
+
+    // The request's future gets the response if it has one, otherwise the command's handler
+    private void onResponse(int commandId, List<ByteBuffer> params, RequestQueue.QueuedRequest queued) {
+        if (queued != null && queued.getResponse() != null) {
+            if (Command.Error.getId() == commandId) {
+                fail(queued, "Cloud error: " + (params.isEmpty() ? "unknown" : bufferToString(params.get(0))));
+            } else {
+                complete(queued, params);
+            }
+            return;
+        }
+
+        try {
+            if (!dispatcher.dispatch(commandId, params)) {
+                System.out.println("No handler for " + getCommandName(commandId) + " (" + commandId + "), params: " + params.size());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            alertBox("Error processing " + getCommandName(commandId) + " response: " + e.getMessage());
+        }
+    }
+
+    private void AuthSuccess() {
+        // Restored on the next start instead of pairing again
+        SessionManager.saveSession(session);
+
+        File file = new File("C:/Users/Ramazan/Downloads/the_cloud_ppt.pdf");
+//        var file2 = new File("C:\\Users\\Ramazan\\Downloads\\encrypted messenger.pdf");
+        startSendFile(file, ChunkSourceType.POSITIONAL_READ);
+//        startSendFileAsync(file2);
+    }
+}
@@ -1,34 +1,165 @@
 package com.cloud.communication.cryto;
 
 import static com.cloud.communication.cryto.RSAKeyManager.exportCryptoKey;
-import static com.cloud.communication.cryto.RSAKeyManager.generateKeyPair;
+import static com.cloud.communication.cryto.RSAKeyManager.takeKeyPair;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Open sessions by id, one {@link SessionClient} per paired cloud. The static request APIs
+ * (RequestManager, FileUploader, FileDownloader, PushChannel) use the current one.
+ * Sessions without an id are not registered. With a {@link SessionStore} set, authenticated
+ * sessions are saved and can be restored after a restart without pairing again.
+ */
 public class SessionManager {
 
-    private static Session currentSession = new Session();
+    // Id of the session started by resetSession()
+    public static final Object DEFAULT_ID = 0;
+
+    private static final Map<Object, SessionClient> clients = new ConcurrentHashMap<>();
+    private static volatile SessionClient currentClient = new SessionClient(new Session());
+    private static volatile SessionStore store;
 
     public static Session getCurrentSession() {
-        return currentSession;
+        return currentClient.getSession();
+    }
+
+    public static SessionClient getCurrentClient() {
+        return currentClient;
+    }
+
+    public static void setCurrentClient(SessionClient client) {
+        currentClient = client;
+    }
+
+    // Client of the open session with this id, null if there is none
+    public static SessionClient getClient(Object id) {
+        return id != null ? clients.get(id) : null;
+    }
+
+    public static List<SessionClient> getClients() {
+        return new ArrayList<>(clients.values());
     }
 
+    /**
+     * Starts a session with fresh keys and makes it the current one. A previous session with
+     * the same id is closed, its requests in flight still complete with its own keys.
+     */
     public static CompletableFuture<Void> resetSession(Object id) {
-        currentSession = new Session(id);
+        removeSnapshot(id);
+        SessionClient client = newClient(new Session(id));
+        makeCurrent(client);
+        return initKeys(client.getSession());
+    }
+
+    public static  CompletableFuture<Void>  resetSession() {
+        return resetSession(DEFAULT_ID);
+    }
+
+    /**
+     * Saves authenticated sessions to the store from now on and, when it holds a snapshot of the
+     * default session, makes that the current one, so requests go out without a new handshake.
+     * Otherwise the next step is pairing, so keypairs start generating for the QR scan.
+     */
+    public static void setSessionStore(SessionStore sessionStore) {
+        store = sessionStore;
+        SessionClient restored = restoreSession(DEFAULT_ID);
+        if (restored != null) {
+            makeCurrent(restored);
+        } else {
+            RSAKeyManager.getKeyPool().prefill();
+        }
+    }
+
+    // Opens the session saved under the id, null when there is no usable snapshot
+    public static SessionClient restoreSession(Object id) {
+        SessionStore sessionStore = store;
+        if (sessionStore == null || id == null) return null;
+        String snapshot = sessionStore.load(String.valueOf(id));
+        if (snapshot == null) return null;
+        try {
+            return newClient(SessionSnapshot.decode(id, snapshot));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Dropping saved session " + id + ": " + e.getMessage());
+            sessionStore.remove(String.valueOf(id));
+            return null;
+        }
+    }
 
-        return generateKeyPair()
+    // Called once the cloud authenticated the session
+    static void saveSession(Session session) {
+        SessionStore sessionStore = store;
+        if (sessionStore == null || session.getId() == null || !SessionSnapshot.isPaired(session)) return;
+        sessionStore.save(String.valueOf(session.getId()), SessionSnapshot.encode(session));
+    }
+
+    // Opens another session with fresh keys next to the current one, e.g. to sync with a second cloud
+    public static CompletableFuture<SessionClient> openSession(Object id) {
+        SessionClient client = newClient(new Session(id));
+        return initKeys(client.getSession()).thenApply(v -> client);
+    }
+
+    /**
+     * Registers a client for a session whose keys are already set, e.g. a restored or mocked one,
+     * closing a previous session with the same id.
+     */
+    public static SessionClient newClient(Session session) {
+        SessionClient client = new SessionClient(session);
+        Object id = session.getId();
+        if (id != null) {
+            SessionClient previous = clients.put(id, client);
+            if (previous != null) {
+                previous.close();
+            }
+        }
+        return client;
+    }
+
+    // A closed current client rejects requests until another session is made current
+    public static void closeSession(Object id) {
+        SessionClient client = id != null ? clients.remove(id) : null;
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    // Closes the session and deletes its snapshot, so the next start needs a new pairing
+    public static void forgetSession(Object id) {
+        closeSession(id);
+        removeSnapshot(id);
+    }
+
+    private static void removeSnapshot(Object id) {
+        SessionStore sessionStore = store;
+        if (sessionStore != null && id != null) {
+            sessionStore.remove(String.valueOf(id));
+        }
+    }
+
+    private static void makeCurrent(SessionClient client) {
+        SessionClient previous = currentClient;
+        currentClient = client;
+        // An unregistered session cannot be reached any more
+        if (previous != client && previous.getSession().getId() == null) {
+            previous.close();
+        }
+    }
+
+    // Keys come from the pool, so a QR scan does not wait for RSA key generation
+    private static CompletableFuture<Void> initKeys(Session session) {
+        return takeKeyPair()
                 .thenCompose(keyPair -> {
-                    currentSession.setPublicKey(keyPair.getPublic());
-                    currentSession.setPrivateKey(keyPair.getPrivate());
-                    return exportCryptoKey(currentSession.getPublicKey());
+                    session.setPublicKey(keyPair.getPublic());
+                    session.setPrivateKey(keyPair.getPrivate());
+                    return exportCryptoKey(session.getPublicKey());
                 })
                 .thenAccept(pair -> {
-                    currentSession.setPublicKeyB64(pair.getFirst());
-                    currentSession.setClientId(pair.getSecond());
+                    session.setPublicKeyB64(pair.getFirst());
+                    session.setClientId(pair.getSecond());
                 });
     }
-
-    public static  CompletableFuture<Void>  resetSession() {
-        return resetSession(0);
-    }
 }
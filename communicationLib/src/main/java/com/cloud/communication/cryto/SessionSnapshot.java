@@ -0,0 +1,89 @@
+package com.cloud.communication.cryto;
+
+import com.cloud.communication.cryto.encryption.AesEncryption;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Base64;
+import java.util.Properties;
+
+/**
+ * Text form of a paired session, enough to send encrypted requests again without a new
+ * QR scan and handshake: entry point, server and client id, encryption type, device key
+ * (absent for xorAB sessions), IV and the capabilities accepted by the cloud. The RSA keys are only needed for pairing
+ * and are not kept.
+ */
+public class SessionSnapshot {
+
+    // A session can be restored once the cloud sent its device key, or paired it for xorAB
+    public static boolean isPaired(Session session) {
+        return (session.getDeviceKey() != null || session.isXorAB()) && session.getIV() != null && session.getClientId() != null;
+    }
+
+    public static String encode(Session session) {
+        if (!isPaired(session)) {
+            throw new IllegalArgumentException("Session is not paired");
+        }
+        Properties properties = new Properties();
+        setIfPresent(properties, "entryPoint", session.getEntryPoint());
+        properties.setProperty("clientId", session.getClientId());
+        setIfPresent(properties, "serverId", session.getServerId());
+        setIfPresent(properties, "encryptionType", session.getEncryptionType());
+        if (session.getDeviceKey() != null) {
+            properties.setProperty("deviceKey", Base64.getEncoder().encodeToString(session.getDeviceKey()));
+        }
+        properties.setProperty("iv", Base64.getEncoder().encodeToString(session.getIV()));
+        properties.setProperty("capabilities", Integer.toString(session.getCapabilities()));
+
+        StringWriter out = new StringWriter();
+        try {
+            properties.store(out, null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringWriter does not fail
+        }
+        return out.toString();
+    }
+
+    // Session with the given id and the snapshot's keys, throws IllegalArgumentException for a malformed snapshot
+    public static Session decode(Object id, String snapshot) {
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(snapshot));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed session snapshot", e);
+        }
+
+        String clientId = properties.getProperty("clientId");
+        String deviceKey = properties.getProperty("deviceKey");
+        String iv = properties.getProperty("iv");
+        boolean xorAB = "xorAB".equals(properties.getProperty("encryptionType"));
+        if (clientId == null || (deviceKey == null && !xorAB) || iv == null) {
+            throw new IllegalArgumentException("Incomplete session snapshot");
+        }
+
+        Session session = new Session(id);
+        session.setEntryPoint(properties.getProperty("entryPoint"));
+        session.setClientId(clientId);
+        session.setServerId(properties.getProperty("serverId"));
+        session.setEncryptionType(properties.getProperty("encryptionType"));
+        if (deviceKey != null) {
+            byte[] deviceKeyBytes = Base64.getDecoder().decode(deviceKey);
+            session.setDeviceKey(deviceKeyBytes);
+            session.setSymmetricKey(AesEncryption.createKey(deviceKeyBytes));
+        }
+        session.setIV(Base64.getDecoder().decode(iv));
+        try {
+            session.setCapabilities(Integer.parseInt(properties.getProperty("capabilities", "0")));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed session snapshot", e);
+        }
+        return session;
+    }
+
+    private static void setIfPresent(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.cloud.communication.cryto;
+
+/**
+ * Keeps session snapshots across process restarts, see {@link SessionSnapshot}. The snapshot
+ * holds the device key, so the store must keep it encrypted, e.g. in EncryptedSharedPreferences.
+ * Keys are session ids as strings.
+ */
+public interface SessionStore {
+    void save(String sessionId, String snapshot);
+
+    // Null when no snapshot was saved for the session
+    String load(String sessionId);
+
+    void remove(String sessionId);
+}
@@ -0,0 +1,22 @@
+package com.cloud.communication.cryto;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+/**
+ * Carries the requests to the proxy. By default they go over HTTP to {@link RequestManager#proxy};
+ * {@link RequestManager#setTransport} plugs in another one, e.g. a local stand-in for offline tests.
+ */
+public interface Transport {
+
+    // The proxy's /data endpoint, null when it is not a valid URL
+    HttpUrl dataUrl();
+
+    Call newCall(Request request);
+
+    // Call for the push channel's long poll, which stays open far longer than a request
+    default Call newLongPollCall(Request request) {
+        return newCall(request);
+    }
+}
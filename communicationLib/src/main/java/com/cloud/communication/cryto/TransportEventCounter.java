@@ -0,0 +1,67 @@
+package com.cloud.communication.cryto;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counts connection events of every call, a call that acquires a connection without connecting reused one
+class TransportEventCounter implements EventListener.Factory {
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failedCalls = new AtomicLong();
+    private final AtomicLong newConnections = new AtomicLong();
+    private final AtomicLong reusedConnections = new AtomicLong();
+    private final AtomicLong tlsHandshakes = new AtomicLong();
+    private final AtomicLong http2Calls = new AtomicLong();
+
+    @Override
+    public EventListener create(Call call) {
+        return new EventListener() {
+            // Events of one call arrive on one thread at a time
+            private boolean connected;
+
+            @Override
+            public void callStart(Call call) {
+                calls.incrementAndGet();
+            }
+
+            @Override
+            public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+                connected = true;
+            }
+
+            @Override
+            public void secureConnectStart(Call call) {
+                tlsHandshakes.incrementAndGet();
+            }
+
+            @Override
+            public void connectionAcquired(Call call, Connection connection) {
+                (connected ? newConnections : reusedConnections).incrementAndGet();
+                connected = false;
+                Protocol protocol = connection.protocol();
+                if (protocol == Protocol.HTTP_2 || protocol == Protocol.H2_PRIOR_KNOWLEDGE) {
+                    http2Calls.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void callFailed(Call call, IOException e) {
+                failedCalls.incrementAndGet();
+            }
+        };
+    }
+
+    TransportMetrics snapshot(ConnectionPool pool) {
+        return new TransportMetrics(calls.get(), failedCalls.get(), newConnections.get(), reusedConnections.get(),
+                tlsHandshakes.get(), http2Calls.get(),
+                pool != null ? pool.connectionCount() : 0, pool != null ? pool.idleConnectionCount() : 0);
+    }
+}
@@ -0,0 +1,79 @@
+package com.cloud.communication.cryto;
+
+// Snapshot of the proxy client's connection usage
+public class TransportMetrics {
+
+    private final long calls;
+    private final long failedCalls;
+    private final long newConnections;
+    private final long reusedConnections;
+    private final long tlsHandshakes;
+    private final long http2Calls;
+    private final int pooledConnections;
+    private final int idleConnections;
+
+    TransportMetrics(long calls, long failedCalls, long newConnections, long reusedConnections, long tlsHandshakes,
+                     long http2Calls, int pooledConnections, int idleConnections) {
+        this.calls = calls;
+        this.failedCalls = failedCalls;
+        this.newConnections = newConnections;
+        this.reusedConnections = reusedConnections;
+        this.tlsHandshakes = tlsHandshakes;
+        this.http2Calls = http2Calls;
+        this.pooledConnections = pooledConnections;
+        this.idleConnections = idleConnections;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getFailedCalls() {
+        return failedCalls;
+    }
+
+    // Calls that had to open a connection
+    public long getNewConnections() {
+        return newConnections;
+    }
+
+    // Calls served by a pooled connection
+    public long getReusedConnections() {
+        return reusedConnections;
+    }
+
+    public long getTlsHandshakes() {
+        return tlsHandshakes;
+    }
+
+    public long getHttp2Calls() {
+        return http2Calls;
+    }
+
+    public int getPooledConnections() {
+        return pooledConnections;
+    }
+
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    public double getReuseRatio() {
+        long acquired = newConnections + reusedConnections;
+        return acquired > 0 ? (double) reusedConnections / acquired : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TransportMetrics{" +
+                "calls=" + calls +
+                ", failedCalls=" + failedCalls +
+                ", newConnections=" + newConnections +
+                ", reusedConnections=" + reusedConnections +
+                ", tlsHandshakes=" + tlsHandshakes +
+                ", http2Calls=" + http2Calls +
+                ", pooledConnections=" + pooledConnections +
+                ", idleConnections=" + idleConnections +
+                '}';
+    }
+}
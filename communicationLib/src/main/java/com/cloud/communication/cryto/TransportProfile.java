@@ -0,0 +1,176 @@
+package com.cloud.communication.cryto;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP transport settings of the proxy client. The defaults match the proxy's ceiling of
+ * 5 concurrent requests per client plus the push channel, and leave time to write 1 MB chunks
+ * on slow uplinks. Apply a profile with {@link RequestManager#setTransportProfile}.
+ */
+public class TransportProfile {
+
+    private final int maxIdleConnections;
+    private final long keepAliveMillis;
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final long connectTimeoutMillis;
+    private final long readTimeoutMillis;
+    private final long writeTimeoutMillis;
+    private final boolean h2PriorKnowledge;
+
+    private TransportProfile(Builder builder) {
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAliveMillis = builder.keepAliveMillis;
+        this.maxRequests = builder.maxRequests;
+        this.maxRequestsPerHost = builder.maxRequestsPerHost;
+        this.connectTimeoutMillis = builder.connectTimeoutMillis;
+        this.readTimeoutMillis = builder.readTimeoutMillis;
+        this.writeTimeoutMillis = builder.writeTimeoutMillis;
+        this.h2PriorKnowledge = builder.h2PriorKnowledge;
+    }
+
+    public static TransportProfile defaults() {
+        return new Builder().build();
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .maxIdleConnections(maxIdleConnections)
+                .keepAliveMillis(keepAliveMillis)
+                .maxRequests(maxRequests)
+                .maxRequestsPerHost(maxRequestsPerHost)
+                .connectTimeoutMillis(connectTimeoutMillis)
+                .readTimeoutMillis(readTimeoutMillis)
+                .writeTimeoutMillis(writeTimeoutMillis)
+                .h2PriorKnowledge(h2PriorKnowledge);
+    }
+
+    OkHttpClient newClient(EventListener.Factory listeners) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS))
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(writeTimeoutMillis, TimeUnit.MILLISECONDS)
+                .eventListenerFactory(listeners);
+        if (h2PriorKnowledge) {
+            // Cleartext HTTP/2 without the upgrade round trip, the proxy must speak h2c
+            builder.protocols(List.of(Protocol.H2_PRIOR_KNOWLEDGE));
+        }
+        return builder.build();
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public long getWriteTimeoutMillis() {
+        return writeTimeoutMillis;
+    }
+
+    public boolean isH2PriorKnowledge() {
+        return h2PriorKnowledge;
+    }
+
+    public static class Builder {
+        private int maxIdleConnections = 6;
+        private long keepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+        private int maxRequests = 16;
+        // 5 proxy requests plus the push channel's long poll
+        private int maxRequestsPerHost = 6;
+        private long connectTimeoutMillis = 10_000;
+        private long readTimeoutMillis = 30_000;
+        // A 1 MB chunk at 256 kbit/s takes about 33 s
+        private long writeTimeoutMillis = 60_000;
+        private boolean h2PriorKnowledge;
+
+        public Builder maxIdleConnections(int maxIdleConnections) {
+            this.maxIdleConnections = positive(maxIdleConnections, "maxIdleConnections");
+            return this;
+        }
+
+        public Builder keepAliveMillis(long keepAliveMillis) {
+            this.keepAliveMillis = positive(keepAliveMillis, "keepAliveMillis");
+            return this;
+        }
+
+        public Builder maxRequests(int maxRequests) {
+            this.maxRequests = positive(maxRequests, "maxRequests");
+            return this;
+        }
+
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = positive(maxRequestsPerHost, "maxRequestsPerHost");
+            return this;
+        }
+
+        public Builder connectTimeoutMillis(long connectTimeoutMillis) {
+            this.connectTimeoutMillis = positive(connectTimeoutMillis, "connectTimeoutMillis");
+            return this;
+        }
+
+        public Builder readTimeoutMillis(long readTimeoutMillis) {
+            this.readTimeoutMillis = positive(readTimeoutMillis, "readTimeoutMillis");
+            return this;
+        }
+
+        public Builder writeTimeoutMillis(long writeTimeoutMillis) {
+            this.writeTimeoutMillis = positive(writeTimeoutMillis, "writeTimeoutMillis");
+            return this;
+        }
+
+        public Builder h2PriorKnowledge(boolean h2PriorKnowledge) {
+            this.h2PriorKnowledge = h2PriorKnowledge;
+            return this;
+        }
+
+        public TransportProfile build() {
+            return new TransportProfile(this);
+        }
+
+        private static int positive(int value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " must be > 0");
+            }
+            return value;
+        }
+
+        private static long positive(long value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " must be > 0");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.cloud.communication.cryto;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// State of one file upload, identified by a process-unique id rather than by its name
+class Upload {
+
+    private static final AtomicLong ids = new AtomicLong();
+
+    final long id = ids.incrementAndGet();
+    final File file;
+    final String fullName;
+    final ChunkSourceType sourceType;
+
+    // Chunks waiting to be resent, served before new chunks
+    final Queue<Integer> resend = new ConcurrentLinkedQueue<>();
+    // True while the upload sits in the scheduler's ready queue
+    final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // Set by open(), after the upload was registered as active
+    volatile ChunkSource source;
+    volatile UploadWindow window;
+    // Last contiguous ack written to the journal
+    volatile int journaledChunk;
+
+    Upload(File file, String fullName, ChunkSourceType sourceType) {
+        this.file = file;
+        this.fullName = fullName;
+        this.sourceType = sourceType;
+    }
+
+    void open(int chunkSize, int windowSize, int resumedChunks) throws IOException {
+        source = sourceType.open(file.toPath(), chunkSize);
+        window = new UploadWindow(source.chunkCount(), windowSize, resumedChunks);
+        journaledChunk = window.contiguousAcked();
+    }
+
+    boolean hasWork() {
+        return window != null && (!resend.isEmpty() || window.canSend());
+    }
+
+    void close() {
+        if (source == null) return;
+        try {
+            source.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.cloud.communication.cryto;
+
+import static com.cloud.communication.cryto.ConversionUtils.byteArrayToHex;
+import static com.cloud.communication.cryto.HashUtils.hash256;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Remembers the last contiguously acknowledged chunk of each upload on disk, so an upload
+ * interrupted by process death resumes where it stopped. An entry is only used when the
+ * file's path, size, modification time and the chunk size are unchanged.
+ */
+public class UploadJournal {
+
+    private final Path directory;
+
+    public UploadJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    // Number of leading chunks already stored by the server, 0 when the upload starts fresh
+    public int resumePoint(File file, String fullName, int chunkSize) {
+        Path entry = entryPath(fullName);
+        if (!Files.exists(entry)) return 0;
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(entry)) {
+            properties.load(in);
+            boolean sameFile = file.getAbsolutePath().equals(properties.getProperty("path"))
+                    && file.length() == Long.parseLong(properties.getProperty("size"))
+                    && file.lastModified() == Long.parseLong(properties.getProperty("mtime"))
+                    && chunkSize == Integer.parseInt(properties.getProperty("chunkSize"));
+            if (sameFile) {
+                return Integer.parseInt(properties.getProperty("ackedChunk"));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Ignoring unreadable upload journal for " + fullName + ": " + e.getMessage());
+        }
+        remove(fullName);
+        return 0;
+    }
+
+    public void record(File file, String fullName, int chunkSize, int ackedChunk) {
+        Properties properties = new Properties();
+        properties.setProperty("fullName", fullName);
+        properties.setProperty("path", file.getAbsolutePath());
+        properties.setProperty("size", String.valueOf(file.length()));
+        properties.setProperty("mtime", String.valueOf(file.lastModified()));
+        properties.setProperty("chunkSize", String.valueOf(chunkSize));
+        properties.setProperty("ackedChunk", String.valueOf(ackedChunk));
+
+        try {
+            Files.createDirectories(directory);
+            Path entry = entryPath(fullName);
+            Path tmp = entry.resolveSibling(entry.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, null);
+            }
+            // Replace in one step so a crash never leaves a half-written entry
+            Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void remove(String fullName) {
+        try {
+            Files.deleteIfExists(entryPath(fullName));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Path entryPath(String fullName) {
+        byte[] digest = hash256(fullName.getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(byteArrayToHex(Arrays.copyOf(digest, 16)) + ".upload");
+    }
+}
@@ -0,0 +1,8 @@
+package com.cloud.communication.cryto;
+
+import java.io.File;
+
+// Notified on an upload thread once the cloud acknowledged every chunk of an upload
+public interface UploadListener {
+    void onUploadCompleted(String fullName, File file);
+}
@@ -0,0 +1,75 @@
+package com.cloud.communication.cryto;
+
+// Point-in-time view of the upload scheduler
+public class UploadMetrics {
+    private final int activeUploads;
+    private final int waitingUploads;
+    private final int readyQueueDepth;
+    private final long chunksSent;
+    private final long chunksResent;
+    private final long bytesAcknowledged;
+    private final long completedUploads;
+    private final long failedUploads;
+    private final double throughputBytesPerSecond;
+
+    public UploadMetrics(int activeUploads, int waitingUploads, int readyQueueDepth, long chunksSent,
+                         long chunksResent, long bytesAcknowledged, long completedUploads, long failedUploads,
+                         double throughputBytesPerSecond) {
+        this.activeUploads = activeUploads;
+        this.waitingUploads = waitingUploads;
+        this.readyQueueDepth = readyQueueDepth;
+        this.chunksSent = chunksSent;
+        this.chunksResent = chunksResent;
+        this.bytesAcknowledged = bytesAcknowledged;
+        this.completedUploads = completedUploads;
+        this.failedUploads = failedUploads;
+        this.throughputBytesPerSecond = throughputBytesPerSecond;
+    }
+
+    public int getActiveUploads() {
+        return activeUploads;
+    }
+
+    // Uploads queued behind the active limit or behind an upload with the same name
+    public int getWaitingUploads() {
+        return waitingUploads;
+    }
+
+    // Active uploads with a chunk ready to be sent
+    public int getReadyQueueDepth() {
+        return readyQueueDepth;
+    }
+
+    public long getChunksSent() {
+        return chunksSent;
+    }
+
+    public long getChunksResent() {
+        return chunksResent;
+    }
+
+    public long getBytesAcknowledged() {
+        return bytesAcknowledged;
+    }
+
+    public long getCompletedUploads() {
+        return completedUploads;
+    }
+
+    public long getFailedUploads() {
+        return failedUploads;
+    }
+
+    // Acknowledged bytes per second of time with at least one active upload
+    public double getThroughputBytesPerSecond() {
+        return throughputBytesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadMetrics{active=" + activeUploads + ", waiting=" + waitingUploads + ", ready=" + readyQueueDepth
+                + ", chunksSent=" + chunksSent + ", chunksResent=" + chunksResent + ", bytesAcked=" + bytesAcknowledged
+                + ", completed=" + completedUploads + ", failed=" + failedUploads
+                + String.format(", throughput=%.1f KB/s}", throughputBytesPerSecond / 1024);
+    }
+}
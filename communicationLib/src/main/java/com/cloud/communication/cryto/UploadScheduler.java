@@ -0,0 +1,354 @@
+package com.cloud.communication.cryto;
+
+import static com.cloud.communication.cryto.CryptoUtils.alertBox;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs uploads on a bounded worker pool. Active uploads take turns through a round-robin
+ * ready queue, one chunk per turn, so a large video cannot starve small photos.
+ * Uploads beyond the active limit wait in FIFO order.
+ */
+public class UploadScheduler {
+
+    private static final int MAX_CHUNK_ATTEMPTS = 5;
+
+    private final SessionClient client; // null sends through the current session
+    private final int chunkSize;
+    private final int maxActiveUploads;
+    private volatile int windowSize = 4;
+    private volatile long ackTimeoutMillis = 30_000;
+    private volatile UploadJournal journal;
+
+    private final BlockingQueue<Upload> ready = new LinkedBlockingQueue<>();
+    private final Deque<Upload> waiting = new ArrayDeque<>(); // guarded by this
+    private final Map<Long, Upload> active = new ConcurrentHashMap<>();
+    // The server acks by file name, so only one upload per name is active at a time
+    private final Map<String, Upload> activeByName = new ConcurrentHashMap<>();
+
+    private final AtomicLong chunksSent = new AtomicLong();
+    private final AtomicLong chunksResent = new AtomicLong();
+    private final AtomicLong bytesAcknowledged = new AtomicLong();
+    private final AtomicLong completedUploads = new AtomicLong();
+    private final AtomicLong failedUploads = new AtomicLong();
+    private long busyNanos; // guarded by this
+    private long busySince; // guarded by this
+
+    private final ExecutorService pool;
+    private final ScheduledExecutorService ackTimer;
+
+    public UploadScheduler(int chunkSize, int workers, int maxActiveUploads) {
+        this(null, chunkSize, workers, maxActiveUploads);
+    }
+
+    UploadScheduler(SessionClient client, int chunkSize, int workers, int maxActiveUploads) {
+        this.client = client;
+        this.chunkSize = chunkSize;
+        this.maxActiveUploads = maxActiveUploads;
+
+        pool = Executors.newFixedThreadPool(workers, daemonThreads("upload-worker"));
+        for (int i = 0; i < workers; i++) {
+            pool.execute(this::workerLoop);
+        }
+
+        // Resends chunks whose ack never arrived (failed or dropped requests)
+        ackTimer = Executors.newSingleThreadScheduledExecutor(daemonThreads("upload-ack-timer"));
+        ackTimer.scheduleWithFixedDelay(this::resendExpiredChunks, 1, 1, TimeUnit.SECONDS);
+    }
+
+    // Number of chunks each upload keeps in flight before waiting for acks
+    public void setWindowSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Window size must be >= 1");
+        }
+        windowSize = size;
+    }
+
+    public void setAckTimeoutMillis(long timeoutMillis) {
+        ackTimeoutMillis = timeoutMillis;
+    }
+
+    // Persists upload progress so interrupted uploads resume, null disables resuming
+    public void setJournal(UploadJournal journal) {
+        this.journal = journal;
+    }
+
+    // Queues a file for upload and returns its upload id
+    public long submit(File file, String fullName, ChunkSourceType sourceType) {
+        Upload upload = new Upload(file, fullName, sourceType);
+        synchronized (this) {
+            waiting.add(upload);
+        }
+        startWaiting();
+        return upload.id;
+    }
+
+    public boolean cancel(long uploadId) {
+        synchronized (this) {
+            Iterator<Upload> it = waiting.iterator();
+            while (it.hasNext()) {
+                if (it.next().id == uploadId) {
+                    it.remove();
+                    return true;
+                }
+            }
+        }
+        Upload upload = active.get(uploadId);
+        return upload != null && finish(upload, true);
+    }
+
+    void onAck(String fullName, int chunkNumber) {
+        Upload upload = activeByName.get(fullName);
+        // Not opened yet, so the ack belongs to an earlier upload of the same name
+        UploadWindow window = upload != null ? upload.window : null;
+        if (window == null) {
+            System.out.println("Upload state missing for " + fullName);
+            return;
+        }
+
+        if (window.ack(chunkNumber)) {
+            bytesAcknowledged.addAndGet(upload.source.chunkLength(chunkNumber));
+        }
+
+        if (window.isComplete()) {
+            complete(upload);
+        } else {
+            checkpoint(upload);
+            schedule(upload);
+        }
+    }
+
+    // A chunk whose request failed is resent right away instead of after the ack timeout
+    void onChunkFailed(Upload upload, int chunkNumber) {
+        if (!active.containsKey(upload.id) || upload.window == null || !upload.window.failed(chunkNumber, System.nanoTime())) return;
+        if (upload.window.attempts(chunkNumber) > MAX_CHUNK_ATTEMPTS) {
+            alertBox("Upload failed for " + upload.fullName + ": chunk " + chunkNumber + " could not be sent");
+            fail(upload);
+            return;
+        }
+        upload.resend.add(chunkNumber);
+        schedule(upload);
+    }
+
+    // Stops the workers and closes the active uploads, whose journal entries are kept for resuming
+    public void shutdown() {
+        pool.shutdownNow();
+        ackTimer.shutdownNow();
+        List<Upload> stopped;
+        synchronized (this) {
+            stopped = new ArrayList<>(active.values());
+            active.clear();
+            activeByName.clear();
+            waiting.clear();
+            ready.clear();
+        }
+        stopped.forEach(Upload::close);
+    }
+
+    public synchronized UploadMetrics getMetrics() {
+        long busy = busyNanos + (active.isEmpty() ? 0 : System.nanoTime() - busySince);
+        double throughput = busy > 0 ? bytesAcknowledged.get() * 1e9 / busy : 0;
+        return new UploadMetrics(active.size(), waiting.size(), ready.size(), chunksSent.get(),
+                chunksResent.get(), bytesAcknowledged.get(), completedUploads.get(), failedUploads.get(), throughput);
+    }
+
+    private void workerLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Upload upload;
+            try {
+                upload = ready.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            upload.scheduled.set(false);
+            if (!active.containsKey(upload.id)) continue;
+
+            try {
+                Integer chunkNumber = upload.resend.poll();
+                if (chunkNumber != null) {
+                    chunksResent.incrementAndGet();
+                } else {
+                    chunkNumber = upload.window.next(System.nanoTime());
+                }
+                if (chunkNumber != null) {
+                    chunksSent.incrementAndGet();
+                    int sent = chunkNumber;
+                    FileUploader.sendChunk(client != null ? client : SessionManager.getCurrentClient(), upload, sent)
+                            .whenComplete((ignored, error) -> {
+                                if (error != null) onChunkFailed(upload, sent);
+                            });
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                alertBox("Error reading " + upload.fullName + ": " + e.getMessage());
+                fail(upload);
+                continue;
+            } catch (Exception e) {
+                e.printStackTrace();
+                // The ack timer resends the chunk
+            }
+
+            // Back of the queue, so every other ready upload gets a turn first
+            if (upload.hasWork()) {
+                schedule(upload);
+            }
+        }
+    }
+
+    private void schedule(Upload upload) {
+        if (active.containsKey(upload.id) && upload.hasWork() && upload.scheduled.compareAndSet(false, true)) {
+            ready.add(upload);
+        }
+    }
+
+    private void startWaiting() {
+        while (true) {
+            Upload next = null;
+            synchronized (this) {
+                if (active.size() >= maxActiveUploads) return;
+                Iterator<Upload> it = waiting.iterator();
+                while (it.hasNext()) {
+                    Upload candidate = it.next();
+                    if (!activeByName.containsKey(candidate.fullName)) {
+                        it.remove();
+                        next = candidate;
+                        break;
+                    }
+                }
+                if (next == null) return;
+
+                if (active.isEmpty()) {
+                    busySince = System.nanoTime();
+                }
+                active.put(next.id, next);
+                activeByName.put(next.fullName, next);
+            }
+
+            try {
+                UploadJournal journal = this.journal;
+                int resumedChunks = journal != null ? journal.resumePoint(next.file, next.fullName, chunkSize) : 0;
+                if (resumedChunks > 0) {
+                    System.out.println("Resuming " + next.fullName + " after chunk " + resumedChunks);
+                }
+
+                // Chunks are read on demand, the file is never loaded as a whole
+                next.open(chunkSize, windowSize, resumedChunks);
+                if (next.window.isComplete()) {
+                    // The server already has every chunk, e.g. the process died before the last ack was handled
+                    complete(next);
+                } else {
+                    schedule(next);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                alertBox("Error opening " + next.fullName + ": " + e.getMessage());
+                fail(next);
+            }
+        }
+    }
+
+    /**
+     * Records progress whenever the contiguously acknowledged prefix grows. Only while the
+     * upload is active and under the lock finish() holds, so a late ack cannot write back an
+     * entry that finishing the upload removed.
+     */
+    private void checkpoint(Upload upload) {
+        UploadJournal journal = this.journal;
+        if (journal == null) return;
+        synchronized (this) {
+            if (!active.containsKey(upload.id)) return;
+            int acked = upload.window.contiguousAcked();
+            if (acked > upload.journaledChunk) {
+                journal.record(upload.file, upload.fullName, chunkSize, acked);
+                upload.journaledChunk = acked;
+            }
+        }
+    }
+
+    // Acks racing on the last chunks all see the upload complete, only the first one finishes it
+    private void complete(Upload upload) {
+        if (!finish(upload, true)) return;
+        System.out.println("Upload completed for " + upload.fullName);
+        completedUploads.incrementAndGet();
+        FileUploader.onUploadCompleted(upload.fullName, upload.file);
+    }
+
+    // A failed upload keeps its journal entry, so submitting it again resumes
+    private void fail(Upload upload) {
+        if (finish(upload, false)) {
+            failedUploads.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns false when the upload was already finished. The journal entry is dropped before
+     * the next upload starts, which might have the same name.
+     */
+    private boolean finish(Upload upload, boolean forget) {
+        synchronized (this) {
+            if (active.remove(upload.id) == null) return false;
+            activeByName.remove(upload.fullName, upload);
+            UploadJournal journal = this.journal;
+            if (forget && journal != null) {
+                journal.remove(upload.fullName);
+            }
+            if (active.isEmpty()) {
+                busyNanos += System.nanoTime() - busySince;
+            }
+        }
+        upload.close();
+        startWaiting();
+        return true;
+    }
+
+    private void resendExpiredChunks() {
+        long now = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(ackTimeoutMillis);
+        for (Upload upload : active.values()) {
+            try {
+                if (upload.window == null) continue;
+                List<Integer> expired = upload.window.expired(now, timeoutNanos);
+                if (expired.isEmpty()) continue;
+
+                boolean exhausted = expired.stream().anyMatch(chunk -> upload.window.attempts(chunk) > MAX_CHUNK_ATTEMPTS);
+                if (exhausted) {
+                    alertBox("Upload failed for " + upload.fullName + ": chunks " + expired + " were not acknowledged");
+                    fail(upload);
+                    continue;
+                }
+                System.out.println("Resending chunks " + expired + " for " + upload.fullName);
+                upload.resend.addAll(expired);
+                schedule(upload);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
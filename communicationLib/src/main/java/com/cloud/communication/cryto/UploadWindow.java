@@ -0,0 +1,116 @@
+package com.cloud.communication.cryto;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks which chunks of one upload are in flight and acknowledged, keeping up to
+ * {@code windowSize} chunks outstanding. Acks may arrive in any order, a chunk is only
+ * resent when its request failed or its ack timed out.
+ */
+class UploadWindow {
+
+    private final int totalChunks;
+    private final int windowSize;
+    private final BitSet acked;
+    private final Map<Integer, InFlight> inFlight = new HashMap<>();
+    private int nextChunk;
+
+    UploadWindow(int totalChunks, int windowSize) {
+        this(totalChunks, windowSize, 0);
+    }
+
+    // Starts with the first ackedChunks chunks already acknowledged, for resumed uploads
+    UploadWindow(int totalChunks, int windowSize, int ackedChunks) {
+        this.totalChunks = totalChunks;
+        this.windowSize = Math.max(1, windowSize);
+        this.acked = new BitSet(totalChunks + 1);
+        int resumed = Math.max(0, Math.min(ackedChunks, totalChunks));
+        if (resumed > 0) {
+            acked.set(1, resumed + 1);
+        }
+        this.nextChunk = resumed + 1;
+    }
+
+    int getTotalChunks() {
+        return totalChunks;
+    }
+
+    // Claims the next chunk to send, or null when the window is full or every chunk was sent
+    synchronized Integer next(long now) {
+        while (inFlight.size() < windowSize && nextChunk <= totalChunks) {
+            int chunkNumber = nextChunk++;
+            if (!acked.get(chunkNumber)) {
+                inFlight.put(chunkNumber, new InFlight(now));
+                return chunkNumber;
+            }
+        }
+        return null;
+    }
+
+    synchronized boolean canSend() {
+        return inFlight.size() < windowSize && nextChunk <= totalChunks;
+    }
+
+    // Marks a chunk acknowledged, false for a duplicate ack or an unknown chunk number
+    synchronized boolean ack(int chunkNumber) {
+        if (chunkNumber < 1 || chunkNumber > totalChunks || acked.get(chunkNumber)) {
+            return false;
+        }
+        acked.set(chunkNumber);
+        inFlight.remove(chunkNumber);
+        return true;
+    }
+
+    // Restarts the timer of a chunk whose request failed, false when it needs no resend
+    synchronized boolean failed(int chunkNumber, long now) {
+        InFlight state = inFlight.get(chunkNumber);
+        if (state == null) return false;
+        state.resent(now);
+        return true;
+    }
+
+    // Returns the chunks outstanding for longer than the timeout, restarting their timers
+    synchronized List<Integer> expired(long now, long timeoutNanos) {
+        List<Integer> resend = new ArrayList<>();
+        for (Map.Entry<Integer, InFlight> entry : inFlight.entrySet()) {
+            if (now - entry.getValue().sentAt >= timeoutNanos) {
+                entry.getValue().resent(now);
+                resend.add(entry.getKey());
+            }
+        }
+        return resend;
+    }
+
+    synchronized int attempts(int chunkNumber) {
+        InFlight state = inFlight.get(chunkNumber);
+        return state != null ? state.attempts : 0;
+    }
+
+    // Highest chunk number below which every chunk is acknowledged
+    synchronized int contiguousAcked() {
+        int firstMissing = acked.nextClearBit(1);
+        return firstMissing - 1;
+    }
+
+    synchronized boolean isComplete() {
+        return contiguousAcked() >= totalChunks;
+    }
+
+    private static class InFlight {
+        long sentAt;
+        int attempts = 1;
+
+        InFlight(long sentAt) {
+            this.sentAt = sentAt;
+        }
+
+        void resent(long now) {
+            sentAt = now;
+            attempts++;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.cloud.communication.cryto;
+
+import com.cloud.communication.cryto.encryption.XorKeyStream;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * xorAB counterpart of {@link EncryptingRequestBody}: the command header and payload are
+ * copied through a fixed-size buffer, XORed with the keystream and written as OkHttp sends
+ * the body. The ciphertext is as long as the plaintext.
+ */
+public class XorRequestBody extends RequestBody {
+
+    private static final MediaType MEDIA_TYPE = MediaType.parse("application/octet-stream");
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final byte[] header;
+    private final ByteBuffer[] payload;
+    private final byte[] key;
+    private final int plainLength;
+
+    public XorRequestBody(byte[] header, ByteBuffer[] payload, byte[] key) {
+        this.header = header;
+        this.payload = payload;
+        this.key = key;
+        long length = header.length;
+        for (ByteBuffer part : payload) {
+            length += part.remaining();
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("xorAB request too large: " + length);
+        }
+        this.plainLength = (int) length;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        return plainLength;
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        // A fresh keystream per write, so the body can be written again on retry
+        XorKeyStream keyStream = new XorKeyStream(key, plainLength);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        write(keyStream, ByteBuffer.wrap(header), buffer, sink);
+        for (ByteBuffer part : payload) {
+            write(keyStream, part.duplicate(), buffer, sink);
+        }
+    }
+
+    private static void write(XorKeyStream keyStream, ByteBuffer input, ByteBuffer buffer, BufferedSink sink) throws IOException {
+        while (input.hasRemaining()) {
+            ByteBuffer slice = input.duplicate();
+            slice.limit(slice.position() + Math.min(BUFFER_SIZE, slice.remaining()));
+            input.position(slice.limit());
+
+            buffer.clear();
+            buffer.put(slice);
+            buffer.flip();
+            keyStream.apply(buffer);
+            sink.write(buffer.array(), 0, buffer.limit());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.cloud.communication.cryto;
+
+import com.cloud.communication.cryto.encryption.XorKeyStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Read side of {@link XorRequestBody}: decodes a Base64 xorAB response and XORs it with the
+ * keystream while it is read. The keystream is seeded with the plaintext length, which the
+ * Content-Length fixes up to the 0 to 2 padding bytes at the end of the body. Of those
+ * candidates the one decrypting the first word to a known command id is taken. Bodies of
+ * unknown length, or where no single candidate fits, are decoded whole first.
+ */
+class XorResponseStream extends FilterInputStream {
+
+    private static final int PEEK_CHARS = 8; // Decodes to 6 bytes, enough for the command id
+
+    private final XorKeyStream keyStream;
+
+    private XorResponseStream(InputStream plain, XorKeyStream keyStream) {
+        super(plain);
+        this.keyStream = keyStream;
+    }
+
+    static InputStream open(InputStream base64, long contentLength, byte[] key) throws IOException {
+        if (!base64.markSupported()) {
+            base64 = new BufferedInputStream(base64);
+        }
+        int length = contentLength < 0 ? -1 : plainLength(base64, contentLength, key);
+        if (length < 0) {
+            return decodedWhole(base64, key);
+        }
+        return new XorResponseStream(Base64.getDecoder().wrap(base64), new XorKeyStream(key, length));
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            try {
+                keyStream.apply(ByteBuffer.wrap(b, off, n));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("xorAB response longer than its Content-Length", e);
+            }
+        }
+        return n;
+    }
+
+    // Skipped bytes still advance the keystream
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) break;
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    // Plaintext length for a body of contentLength Base64 chars, or -1 when it cannot be told
+    private static int plainLength(InputStream base64, long contentLength, byte[] key) throws IOException {
+        long remainder = contentLength % 4;
+        long full = contentLength / 4 * 3;
+        if (contentLength < PEEK_CHARS || remainder == 1 || full + 2 > Integer.MAX_VALUE) return -1;
+        if (remainder != 0) {
+            // Unpadded, the last group decodes to 1 or 2 bytes
+            return (int) (full + remainder - 1);
+        }
+
+        base64.mark(PEEK_CHARS);
+        byte[] head;
+        try {
+            head = Base64.getDecoder().decode(base64.readNBytes(PEEK_CHARS));
+        } catch (IllegalArgumentException e) {
+            return -1;
+        } finally {
+            base64.reset();
+        }
+        if (head.length < 4) return -1;
+
+        int found = -1;
+        for (int padding = 0; padding <= 2; padding++) {
+            int length = (int) full - padding;
+            ByteBuffer word = ByteBuffer.wrap(Arrays.copyOf(head, 4)).order(ByteOrder.LITTLE_ENDIAN);
+            new XorKeyStream(key, length).apply(word);
+            if (Command.fromId(word.getInt(0)) != null) {
+                if (found >= 0) return -1;
+                found = length;
+            }
+        }
+        return found;
+    }
+
+    private static InputStream decodedWhole(InputStream base64, byte[] key) throws IOException {
+        byte[] data = Base64.getDecoder().wrap(base64).readAllBytes();
+        new XorKeyStream(key, data.length).apply(ByteBuffer.wrap(data));
+        return new ByteArrayInputStream(data);
+    }
+}
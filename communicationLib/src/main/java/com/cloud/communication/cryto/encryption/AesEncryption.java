@@ -1,38 +1,111 @@
 package com.cloud.communication.cryto.encryption;
 
 
+import com.cloud.communication.cryto.Session;
 import com.cloud.communication.cryto.SessionManager;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.InputStream;
 
 public class AesEncryption {
 
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+
+    // Initialized ciphers per thread; doFinal resets a cipher to its initialized state, so it can be reused
+    private static final ThreadLocal<CachedCipher> encryptCipher = new ThreadLocal<>();
+    private static final ThreadLocal<CachedCipher> decryptCipher = new ThreadLocal<>();
+
     public static SecretKey createKey(byte[] rawKey) {
         return new SecretKeySpec(rawKey, "AES");
     }
 
     public static byte[] encryptData(byte[] data) throws Exception {
-        var session = SessionManager.getCurrentSession();
-        byte[] ivBytes = session.getIV();
-        IvParameterSpec ivSpec = new IvParameterSpec(ivBytes);
+        return doFinal(encryptCipher, Cipher.ENCRYPT_MODE, data);
+    }
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        cipher.init(Cipher.ENCRYPT_MODE, session.getSymmetricKey(), ivSpec);
+    public static byte[] decryptData(byte[] encryptedData) throws Exception {
+        return doFinal(decryptCipher, Cipher.DECRYPT_MODE, encryptedData);
+    }
 
-        return cipher.doFinal(data);
+    // With the key and IV of a given session rather than the current one
+    public static byte[] encryptData(byte[] data, SecretKey key, byte[] ivBytes) throws Exception {
+        return doFinal(encryptCipher, Cipher.ENCRYPT_MODE, data, key, ivBytes);
     }
 
-    public static byte[] decryptData(byte[] encryptedData) throws Exception {
-        var session = SessionManager.getCurrentSession();
-        byte[] ivBytes = session.getIV();
-        IvParameterSpec ivSpec = new IvParameterSpec(ivBytes);
+    public static byte[] decryptData(byte[] encryptedData, SecretKey key, byte[] ivBytes) throws Exception {
+        return doFinal(decryptCipher, Cipher.DECRYPT_MODE, encryptedData, key, ivBytes);
+    }
+
+    private static byte[] doFinal(ThreadLocal<CachedCipher> cache, int mode, byte[] data) throws Exception {
+        Session session = SessionManager.getCurrentSession();
+        return doFinal(cache, mode, data, session.getSymmetricKey(), session.getIV());
+    }
+
+    private static byte[] doFinal(ThreadLocal<CachedCipher> cache, int mode, byte[] data, SecretKey key, byte[] ivBytes) throws Exception {
+        try {
+            return cipher(cache, mode, key, ivBytes).doFinal(data);
+        } catch (Exception e) {
+            // A cipher that failed mid-operation must be re-initialized before reuse
+            cache.remove();
+            throw e;
+        }
+    }
+
+    // Thread's encrypt cipher for the given key and IV, for callers streaming through update/doFinal
+    public static Cipher encryptCipher(SecretKey key, byte[] ivBytes) throws Exception {
+        return cipher(encryptCipher, Cipher.ENCRYPT_MODE, key, ivBytes);
+    }
+
+    // Drops the thread's encrypt cipher after a streaming operation was abandoned midway
+    public static void resetEncryptCipher() {
+        encryptCipher.remove();
+    }
+
+    // Stream decrypting the given ciphertext stream with the thread's decrypt cipher
+    public static InputStream decryptingStream(InputStream encrypted, SecretKey key, byte[] ivBytes) throws Exception {
+        return new CipherInputStream(encrypted, cipher(decryptCipher, Cipher.DECRYPT_MODE, key, ivBytes));
+    }
+
+    // Drops the thread's decrypt cipher after a decrypting stream failed midway
+    public static void resetDecryptCipher() {
+        decryptCipher.remove();
+    }
+
+    // Ciphertext length of PKCS5-padded CBC, which always adds 1 to 16 bytes of padding
+    public static long encryptedLength(long plainLength) {
+        return (plainLength / 16 + 1) * 16;
+    }
+
+    // Returns this thread's cipher, re-initialized only when the key or IV changed
+    static Cipher cipher(ThreadLocal<CachedCipher> cache, int mode, SecretKey key, byte[] ivBytes) throws Exception {
+        CachedCipher cached = cache.get();
+        if (cached == null || !cached.matches(key, ivBytes)) {
+            Cipher cipher = cached != null ? cached.cipher : Cipher.getInstance(TRANSFORMATION);
+            cipher.init(mode, key, new IvParameterSpec(ivBytes));
+            cached = new CachedCipher(cipher, key, ivBytes);
+            cache.set(cached);
+        }
+        return cached.cipher;
+    }
+
+    static final class CachedCipher {
+        final Cipher cipher;
+        private final SecretKey key;
+        private final byte[] iv;
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        cipher.init(Cipher.DECRYPT_MODE, session.getSymmetricKey(), ivSpec);
+        CachedCipher(Cipher cipher, SecretKey key, byte[] iv) {
+            this.cipher = cipher;
+            this.key = key;
+            this.iv = iv;
+        }
 
-        return cipher.doFinal(encryptedData);
+        // Session setters replace the key and IV objects, so identity is enough
+        boolean matches(SecretKey key, byte[] iv) {
+            return this.key == key && this.iv == iv;
+        }
     }
 }
@@ -1,12 +1,8 @@
 package com.cloud.communication.cryto.encryption;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import static com.cloud.communication.cryto.ConversionUtils.resizeBuffers;
-import static com.cloud.communication.cryto.ConversionUtils.toByteArray;
-import static com.cloud.communication.cryto.ConversionUtils.toLongArray;
-import static com.cloud.communication.cryto.HashUtils.fastHash256;
-
 public class XorEncryption {
     //Encryption
     public static byte[] decryptXorAB(byte[] key, byte[] data) {
@@ -15,33 +11,13 @@ public class XorEncryption {
 
     // XOR-AB encryption
     public static byte[] encryptXorAB(byte[] key, byte[] data) {
-        byte[] tmpKey = Arrays.copyOf(key, key.length);
-        int dl = data.length;
-        int newSize = ((dl + 3) / 4) * 4;  // round up to multiple of 4
-
-        byte[] resizedData = resizeBuffers(data, newSize);
-        long[] dt = toLongArray(resizedData);
-
-        if (tmpKey.length < 4) {
-            tmpKey = resizeBuffers(tmpKey, 4);
-        }
-
-        long[] k = toLongArray(tmpKey);
-        k[0] = k[0] ^ dl;
-        tmpKey = toByteArray(k);
-
-        long[] target = new long[dt.length];
-
-        for (int i = 0; i < dt.length; i++) {
-            int p = i % k.length;
-            if (p == 0) {
-                tmpKey = fastHash256(tmpKey);
-                k = toLongArray(tmpKey);
-            }
-            target[i] = dt[i] ^ k[p];
-        }
+        byte[] result = Arrays.copyOf(data, data.length);
+        xorAB(key, ByteBuffer.wrap(result));
+        return result;
+    }
 
-        byte[] result = toByteArray(target);
-        return Arrays.copyOf(result, dl);
+    // Encrypts or decrypts the buffer's remaining bytes in place, its position is unchanged
+    public static void xorAB(byte[] key, ByteBuffer data) {
+        new XorKeyStream(key, data.remaining()).apply(data);
     }
 }
@@ -0,0 +1,65 @@
+package com.cloud.communication.cryto.encryption;
+
+import static com.cloud.communication.cryto.HashUtils.fastHash256;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * xorAB keystream: fastHash256 chained over 32-byte blocks, starting from the key's
+ * little-endian words (at least one, a partial last word is dropped) with the data length
+ * XORed into the first word. Successive calls continue where the previous one stopped, so
+ * data of any size is encrypted or decrypted piece by piece.
+ */
+public class XorKeyStream {
+
+    private final ByteBuffer block = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+    private final int length;
+    private int offset; // Bytes of keystream used so far
+
+    public XorKeyStream(byte[] key, int length) {
+        this.length = length;
+        fastHash256(seed(key, length), block);
+    }
+
+    /**
+     * XORs the buffer's remaining bytes in place with the next bytes of the keystream, the
+     * buffer's position is unchanged. Throws IllegalArgumentException past the data length.
+     */
+    public void apply(ByteBuffer data) {
+        int n = data.remaining();
+        if (n > length - offset) {
+            throw new IllegalArgumentException("Keystream seeded for " + length + " bytes, " + (offset + n) + " requested");
+        }
+        ByteBuffer le = data.order() == ByteOrder.LITTLE_ENDIAN ? data : data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int pos = le.position();
+        int end = pos + n;
+        while (pos < end) {
+            int inBlock = offset & 31;
+            if (inBlock == 0 && offset > 0) {
+                fastHash256(block, block);
+            }
+            int count = Math.min(32 - inBlock, end - pos);
+            int j = 0;
+            if (inBlock == 0) {
+                for (; j + 8 <= count; j += 8) {
+                    le.putLong(pos + j, le.getLong(pos + j) ^ block.getLong(j));
+                }
+            }
+            for (; j < count; j++) {
+                le.put(pos + j, (byte) (le.get(pos + j) ^ block.get(inBlock + j)));
+            }
+            pos += count;
+            offset += count;
+        }
+    }
+
+    private static ByteBuffer seed(byte[] key, int length) {
+        int words = Math.max(1, key.length / 4);
+        ByteBuffer seed = ByteBuffer.allocate(words * 4).order(ByteOrder.LITTLE_ENDIAN);
+        seed.put(key, 0, Math.min(key.length, words * 4));
+        seed.clear();
+        seed.putInt(0, seed.getInt(0) ^ length);
+        return seed;
+    }
+}
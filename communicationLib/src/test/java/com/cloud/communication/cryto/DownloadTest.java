@@ -0,0 +1,123 @@
+package com.cloud.communication.cryto;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class DownloadTest {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final int LENGTH = 5000; // Four full chunks and one of 904 bytes
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void resumesFromProgressFile() throws Exception {
+        File target = dir.resolve("photo.jpg").toFile();
+        Download download = open(target, CHUNK_SIZE);
+        assertTrue(download.setLength(LENGTH, 5));
+        write(download, 1);
+        write(download, 3);
+        download.checkpoint(2);
+        download.suspend();
+
+        Download resumed = open(target, CHUNK_SIZE);
+        assertEquals(2, resumed.receivedChunks());
+        assertEquals(List.of(2, 4, 5), resumed.nextChunks(8, 0));
+        assertTrue(resumed.setLength(LENGTH, 5));
+    }
+
+    @Test
+    public void progressOfAnotherChunkSizeStartsFresh() throws Exception {
+        File target = dir.resolve("photo.jpg").toFile();
+        Download download = open(target, CHUNK_SIZE);
+        download.setLength(LENGTH, 5);
+        write(download, 1);
+        download.suspend();
+
+        Download resumed = open(target, 2 * CHUNK_SIZE);
+        assertEquals(0, resumed.receivedChunks());
+        // Length unknown again, only the first chunk is requested until it arrives
+        assertEquals(List.of(1), resumed.nextChunks(8, 0));
+        assertEquals(List.of(), resumed.nextChunks(8, 0));
+    }
+
+    @Test
+    public void rejectsMismatchingLength() throws Exception {
+        Download download = open(dir.resolve("photo.jpg").toFile(), CHUNK_SIZE);
+
+        assertFalse(download.setLength(-1, 1));
+        assertFalse(download.setLength(LENGTH, 4));
+        assertTrue(download.setLength(LENGTH, 5));
+        assertTrue(download.setLength(LENGTH, 5));
+        // The file changed on the cloud
+        assertFalse(download.setLength(6000, 6));
+        assertEquals(LENGTH, download.channel().size());
+    }
+
+    @Test
+    public void ignoresOutOfRangeAndDuplicateChunks() throws Exception {
+        Download download = open(dir.resolve("photo.jpg").toFile(), CHUNK_SIZE);
+        download.setLength(LENGTH, 5);
+
+        assertFalse(download.wants(0));
+        assertFalse(download.wants(6));
+        assertTrue(download.wants(2));
+
+        assertFalse(write(download, 2));
+        assertFalse(download.wants(2));
+        assertFalse(download.onChunkWritten(2));
+        assertEquals(1, download.receivedChunks());
+        assertEquals(List.of(1, 3, 4, 5), download.nextChunks(8, 0));
+    }
+
+    @Test
+    public void completesWithPartialLastChunk() throws Exception {
+        File target = dir.resolve("photo.jpg").toFile();
+        Download download = open(target, CHUNK_SIZE);
+        download.setLength(LENGTH, 5);
+
+        assertEquals(CHUNK_SIZE, download.chunkLength(1));
+        assertEquals(LENGTH - 4 * CHUNK_SIZE, download.chunkLength(5));
+        assertEquals(4L * CHUNK_SIZE, download.position(5));
+
+        for (int chunk = 5; chunk > 1; chunk--) {
+            assertFalse(write(download, chunk));
+        }
+        assertTrue(write(download, 1));
+        assertFalse(download.wants(1));
+        download.complete();
+
+        byte[] content = Files.readAllBytes(target.toPath());
+        assertEquals(LENGTH, content.length);
+        assertArrayEquals(new byte[]{5, 5}, new byte[]{content[4 * CHUNK_SIZE], content[LENGTH - 1]});
+        assertFalse(Files.exists(dir.resolve("photo.jpg.part")));
+        assertFalse(Files.exists(dir.resolve("photo.jpg.part.progress")));
+    }
+
+    private static Download open(File target, int chunkSize) throws Exception {
+        Download download = new Download(null, "photo.jpg", target, chunkSize);
+        download.open();
+        return download;
+    }
+
+    // Fills the chunk with its number
+    private static boolean write(Download download, int chunk) throws Exception {
+        byte[] data = new byte[download.chunkLength(chunk)];
+        Arrays.fill(data, (byte) chunk);
+        download.channel().write(ByteBuffer.wrap(data), download.position(chunk));
+        return download.onChunkWritten(chunk);
+    }
+}
@@ -0,0 +1,160 @@
+package com.cloud.communication.cryto;
+
+import com.cloud.communication.cryto.encryption.AesEncryption;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline load test: uploads and downloads files through the real client stack against a
+ * {@link LoopbackProxy}, first with room for every request, then with a proxy that only
+ * allows 2 concurrent requests so the adaptive limiter has to back off on 503s. Finally many
+ * sessions, each with its own key, upload in parallel as separate clients of the same proxy.
+ */
+public class LoopbackLoadTest {
+
+    private static final int FILES = 8;
+    private static final int FILE_SIZE = 3 * 1024 * 1024 + 12345;
+    private static final int SESSIONS = 200;
+    private static final int SESSION_FILE_SIZE = 256 * 1024 + 123;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(42);
+        byte[] rawKey = new byte[32];
+        byte[] iv = new byte[16];
+        random.nextBytes(rawKey);
+        random.nextBytes(iv);
+        SecretKey key = AesEncryption.createKey(rawKey);
+        initSession(rawKey, key, iv);
+
+        run("unconstrained", new LoopbackProxy(key, iv, 64, 5), random);
+        run("proxy limit 2", new LoopbackProxy(key, iv, 2, 5), random);
+        runSessions(new LoopbackProxy(key, iv, 64, 5), random);
+    }
+
+    private static void runSessions(LoopbackProxy proxy, Random random) throws Exception {
+        try (proxy) {
+            proxy.start();
+            RequestManager.setTransport(new HttpTransport(proxy.url(), TransportProfile.defaults()));
+            Path dir = Files.createTempDirectory("loopback-sessions");
+
+            SessionClient[] clients = new SessionClient[SESSIONS];
+            byte[][] contents = new byte[SESSIONS][SESSION_FILE_SIZE];
+            long started = System.nanoTime();
+            for (int i = 0; i < SESSIONS; i++) {
+                byte[] rawKey = new byte[32];
+                byte[] iv = new byte[16];
+                random.nextBytes(rawKey);
+                random.nextBytes(iv);
+                SecretKey key = AesEncryption.createKey(rawKey);
+                Session session = new Session("loopback-" + i);
+                initSession(session, "loopback-" + i, rawKey, key, iv);
+                proxy.addClient(session.getClientId(), key, iv);
+                clients[i] = SessionManager.newClient(session);
+
+                random.nextBytes(contents[i]);
+                File file = dir.resolve("session-" + i + ".bin").toFile();
+                Files.write(file.toPath(), contents[i]);
+                clients[i].startSendFile(file, ChunkSourceType.POSITIONAL_READ);
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+            for (SessionClient client : clients) {
+                while (client.getUploadMetrics().getCompletedUploads() < 1 && System.nanoTime() < deadline) {
+                    Thread.sleep(20);
+                }
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+            double mb = SESSIONS * (double) SESSION_FILE_SIZE / (1024 * 1024);
+            System.out.printf("%d sessions upload: %.1f MB in %.2f s (%.1f MB/s), proxy requests=%d rejected=%d maxInFlight=%d%n",
+                    SESSIONS, mb, seconds, mb / seconds, proxy.getRequests(), proxy.getRejected(), proxy.getMaxInFlight());
+
+            for (int i = 0; i < SESSIONS; i++) {
+                if (!Arrays.equals(proxy.getFile("session-" + i + ".bin"), contents[i])) {
+                    throw new AssertionError("session-" + i + ".bin differs after the upload");
+                }
+                SessionManager.closeSession(clients[i].getSession().getId());
+            }
+        }
+    }
+
+    private static void run(String name, LoopbackProxy proxy, Random random) throws Exception {
+        try (proxy) {
+            proxy.start();
+            RequestManager.setTransport(new HttpTransport(proxy.url(), TransportProfile.defaults()));
+            Path dir = Files.createTempDirectory("loopback");
+
+            byte[][] contents = new byte[FILES][FILE_SIZE];
+            long started = System.nanoTime();
+            long completedBefore = FileUploader.getMetrics().getCompletedUploads();
+            for (int i = 0; i < FILES; i++) {
+                random.nextBytes(contents[i]);
+                File file = dir.resolve(name.replace(' ', '_') + "-" + i + ".bin").toFile();
+                Files.write(file.toPath(), contents[i]);
+                FileUploader.startSendFile(file);
+            }
+            while (FileUploader.getMetrics().getCompletedUploads() - completedBefore < FILES) {
+                Thread.sleep(20);
+            }
+            report(name + " upload", started, proxy);
+
+            CountDownLatch done = new CountDownLatch(FILES);
+            FileDownloader.setListener(new DownloadListener() {
+                @Override
+                public void onDownloadCompleted(String fullName, File file) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onDownloadFailed(String fullName, String reason) {
+                    System.out.println("Download failed: " + fullName + " " + reason);
+                    done.countDown();
+                }
+            });
+            started = System.nanoTime();
+            for (int i = 0; i < FILES; i++) {
+                String fullName = name.replace(' ', '_') + "-" + i + ".bin";
+                FileDownloader.download(fullName, dir.resolve("restored-" + fullName).toFile());
+            }
+            done.await(5, TimeUnit.MINUTES);
+            report(name + " download", started, proxy);
+
+            for (int i = 0; i < FILES; i++) {
+                String fullName = name.replace(' ', '_') + "-" + i + ".bin";
+                byte[] restored = Files.readAllBytes(dir.resolve("restored-" + fullName));
+                if (!Arrays.equals(restored, contents[i])) {
+                    throw new AssertionError(fullName + " differs after the round trip");
+                }
+            }
+        }
+    }
+
+    private static void report(String phase, long started, LoopbackProxy proxy) {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        double mb = FILES * (double) FILE_SIZE / (1024 * 1024);
+        System.out.printf("%s: %.1f MB in %.2f s (%.1f MB/s), proxy requests=%d rejected=%d maxInFlight=%d, limit=%d%n",
+                phase, mb, seconds, mb / seconds, proxy.getRequests(), proxy.getRejected(), proxy.getMaxInFlight(),
+                RequestManager.getConcurrencyLimit());
+        System.out.println("  " + RequestManager.getTransportMetrics());
+    }
+
+    private static void initSession(byte[] rawKey, SecretKey key, byte[] iv) {
+        initSession(SessionManager.getCurrentSession(), "loopback", rawKey, key, iv);
+    }
+
+    private static void initSession(Session session, String clientId, byte[] rawKey, SecretKey key, byte[] iv) {
+        session.setClientId(clientId);
+        session.setServerId("loopback");
+        session.setEncryptionType("aes");
+        session.setDeviceKey(rawKey);
+        session.setSymmetricKey(key);
+        session.setIV(iv);
+        session.setCapabilities(ClientCapabilities.BINARY_CHUNKS);
+    }
+}
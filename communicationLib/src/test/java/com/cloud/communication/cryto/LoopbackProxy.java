@@ -0,0 +1,228 @@
+package com.cloud.communication.cryto;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the proxy and the cloud behind it, serving /data on the loopback
+ * interface. It speaks the AES command protocol for SetFile (binary chunks) and GetFile, answers
+ * other commands with an empty response, and like the proxy answers 503 above its concurrency limit.
+ * Clients registered with {@link #addClient} use their own key, all others the proxy's key.
+ */
+public class LoopbackProxy implements Closeable {
+
+    private final SecretKey key;
+    private final byte[] iv;
+    private final int maxConcurrentRequests;
+    private final long latencyMillis;
+
+    private final Map<String, SecretKey> clientKeys = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> clientIvs = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public LoopbackProxy(SecretKey key, byte[] iv, int maxConcurrentRequests, long latencyMillis) {
+        this.key = key;
+        this.iv = iv;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.latencyMillis = latencyMillis;
+    }
+
+    public LoopbackProxy start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/data", this::handle);
+        server.start();
+        return this;
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    // Requests with this cid are decrypted and answered with the given key and IV
+    public void addClient(String clientId, SecretKey clientKey, byte[] clientIv) {
+        clientKeys.put(clientId, clientKey);
+        clientIvs.put(clientId, clientIv);
+    }
+
+    // Makes the file available to GetFile
+    public void putFile(String fullName, byte[] content) {
+        files.put(fullName, content);
+    }
+
+    // The uploaded file once all its chunks arrived, null before
+    public byte[] getFile(String fullName) {
+        return files.get(fullName);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            if (current > maxConcurrentRequests) {
+                rejected.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if ("GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(204, -1); // No push notifications
+                return;
+            }
+
+            String clientId = clientId(exchange.getRequestURI().getRawQuery());
+            byte[] plain = cipher(Cipher.DECRYPT_MODE, clientId).doFinal(exchange.getRequestBody().readAllBytes());
+            ByteBuffer request = ByteBuffer.wrap(plain).order(ByteOrder.LITTLE_ENDIAN);
+            int commandId = request.getInt();
+            List<ByteBuffer> params = CryptoUtils.splitParams(request);
+
+            byte[][] response;
+            if (commandId == Command.SetFile.getId()) {
+                response = setFile(params);
+            } else if (commandId == Command.GetFile.getId()) {
+                response = getFile(params);
+            } else {
+                response = new byte[0][];
+            }
+
+            byte[] body = Base64.getEncoder().encode(cipher(Cipher.ENCRYPT_MODE, clientId).doFinal(frame(commandId, response)));
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    // [FullName][ChunkPart][TotalChunk][Data], acknowledged with "FullName\tChunkPart"
+    private byte[][] setFile(List<ByteBuffer> params) {
+        String fullName = ConversionUtils.bufferToString(params.get(0));
+        int chunkPart = params.get(1).getInt(0);
+        int totalChunk = params.get(2).getInt(0);
+
+        Map<Integer, byte[]> chunks = uploads.computeIfAbsent(fullName, name -> new ConcurrentHashMap<>());
+        chunks.put(chunkPart, ConversionUtils.toArray(params.get(3)));
+        if (chunks.size() == totalChunk) {
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            for (int i = 1; i <= totalChunk; i++) {
+                file.writeBytes(chunks.get(i));
+            }
+            files.put(fullName, file.toByteArray());
+            uploads.remove(fullName);
+        }
+        return new byte[][]{(fullName + "\t" + chunkPart).getBytes(StandardCharsets.UTF_8)};
+    }
+
+    // [FullName][ChunkPart][ChunkSize], answered with [FullName][ChunkPart][TotalChunk][FileLength][Data]
+    private byte[][] getFile(List<ByteBuffer> params) {
+        byte[] name = ConversionUtils.toArray(params.get(0));
+        int chunkPart = params.get(1).getInt(0);
+        int chunkSize = params.get(2).getInt(0);
+        byte[] file = files.get(new String(name, StandardCharsets.UTF_8));
+        if (file == null) {
+            throw new IllegalArgumentException("No such file");
+        }
+
+        int totalChunk = Math.max(1, (file.length + chunkSize - 1) / chunkSize);
+        int offset = (chunkPart - 1) * chunkSize;
+        int length = Math.max(0, Math.min(chunkSize, file.length - offset));
+        byte[] data = new byte[length];
+        System.arraycopy(file, offset, data, 0, length);
+        return new byte[][]{name, le(4).putInt(chunkPart).array(), le(4).putInt(totalChunk).array(),
+                le(8).putLong(file.length).array(), data};
+    }
+
+    private static byte[] frame(int commandId, byte[][] params) {
+        int length = 4;
+        for (byte[] param : params) {
+            length += 4 + param.length;
+        }
+        ByteBuffer frame = le(length).putInt(commandId);
+        for (byte[] param : params) {
+            frame.putInt(param.length).put(param);
+        }
+        return frame.array();
+    }
+
+    private static ByteBuffer le(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String clientId(String query) {
+        if (query == null) return null;
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("cid=")) {
+                return parameter.substring(4);
+            }
+        }
+        return null;
+    }
+
+    private Cipher cipher(int mode, String clientId) throws Exception {
+        SecretKey clientKey = clientId != null ? clientKeys.get(clientId) : null;
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        if (clientKey != null) {
+            cipher.init(mode, clientKey, new IvParameterSpec(clientIvs.get(clientId)));
+        } else {
+            cipher.init(mode, key, new IvParameterSpec(iv));
+        }
+        return cipher;
+    }
+}
@@ -0,0 +1,36 @@
+package com.cloud.communication.cryto;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.cloud.communication.cryto.encryption.AesEncryption;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.crypto.SecretKey;
+
+public class ParamReaderTest {
+
+    @Test
+    public void closeDrainsAnAbandonedDecryptingStream() throws Exception {
+        SecretKey key = AesEncryption.createKey(new byte[16]);
+        byte[] iv = new byte[16];
+        byte[] plain = ByteBuffer.allocate(4 + 4 + 100).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(7).putInt(100).put(new byte[100]).array();
+        ByteArrayInputStream body = new ByteArrayInputStream(AesEncryption.encryptData(plain, key, iv));
+
+        try (ParamReader reader = new ParamReader(AesEncryption.decryptingStream(body, key, iv))) {
+            assertEquals(7, reader.readCommandId());
+            // Handler returns early, leaving the param unread
+        }
+
+        assertEquals(0, body.available());
+        // The thread's cached cipher is back at its initialized state
+        byte[] next = "next response".getBytes();
+        assertArrayEquals(next, AesEncryption.decryptData(AesEncryption.encryptData(next, key, iv), key, iv));
+    }
+}
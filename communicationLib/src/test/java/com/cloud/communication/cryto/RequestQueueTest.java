@@ -0,0 +1,48 @@
+package com.cloud.communication.cryto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RequestQueueTest {
+
+    private static final int SET_FILE = Command.SetFile.getId();
+
+    @Test
+    public void requeuedRequestGoesFirstEvenWhenItsClassIsFull() throws Exception {
+        RequestQueue queue = new RequestQueue(2);
+        assertTrue(queue.offer(SET_FILE, new byte[]{1}, 0, TimeUnit.SECONDS));
+        RequestQueue.QueuedRequest first = queue.poll();
+        assertTrue(queue.offer(SET_FILE, new byte[]{2}, 0, TimeUnit.SECONDS));
+        assertTrue(queue.offer(SET_FILE, new byte[]{3}, 0, TimeUnit.SECONDS));
+        assertFalse(queue.offer(SET_FILE, new byte[]{4}, 0, TimeUnit.SECONDS));
+
+        queue.requeue(first);
+
+        RequestQueue.QueuedRequest retry = queue.poll();
+        assertEquals(1, retry.getData()[0]);
+        assertEquals(2, retry.getAttempt());
+        assertEquals(2, queue.poll().getData()[0]);
+        assertEquals(3, queue.poll().getData()[0]);
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void requeuedRequestReleasesNoCapacity() throws Exception {
+        RequestQueue queue = new RequestQueue(1);
+        assertTrue(queue.offer(SET_FILE, new byte[]{1}, 0, TimeUnit.SECONDS));
+        RequestQueue.QueuedRequest first = queue.poll();
+        assertTrue(queue.offer(SET_FILE, new byte[]{2}, 0, TimeUnit.SECONDS));
+
+        queue.requeue(first);
+        queue.poll();
+
+        // The class still holds request 2, so it stays full
+        assertFalse(queue.offer(SET_FILE, new byte[]{3}, 0, TimeUnit.SECONDS));
+    }
+}
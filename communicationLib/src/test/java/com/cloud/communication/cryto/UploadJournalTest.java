@@ -0,0 +1,92 @@
+package com.cloud.communication.cryto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class UploadJournalTest {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void resumesFromRecordedChunk() throws Exception {
+        File file = file("photo.jpg", 5000);
+        UploadJournal journal = new UploadJournal(dir.resolve("journal"));
+
+        assertEquals(0, journal.resumePoint(file, "photo.jpg", CHUNK_SIZE));
+        journal.record(file, "photo.jpg", CHUNK_SIZE, 3);
+        assertEquals(3, new UploadJournal(dir.resolve("journal")).resumePoint(file, "photo.jpg", CHUNK_SIZE));
+
+        journal.remove("photo.jpg");
+        assertEquals(0, journal.resumePoint(file, "photo.jpg", CHUNK_SIZE));
+    }
+
+    @Test
+    public void changedFileOrChunkSizeStartsFresh() throws Exception {
+        File file = file("photo.jpg", 5000);
+        UploadJournal journal = new UploadJournal(dir.resolve("journal"));
+
+        journal.record(file, "photo.jpg", CHUNK_SIZE, 3);
+        assertEquals(0, journal.resumePoint(file, "photo.jpg", 2 * CHUNK_SIZE));
+        // The mismatching entry was dropped
+        assertEquals(0, journal.resumePoint(file, "photo.jpg", CHUNK_SIZE));
+
+        journal.record(file, "photo.jpg", CHUNK_SIZE, 3);
+        Files.write(file.toPath(), new byte[6000]);
+        assertEquals(0, journal.resumePoint(file, "photo.jpg", CHUNK_SIZE));
+    }
+
+    @Test
+    public void unreadableEntryStartsFresh() throws Exception {
+        File file = file("photo.jpg", 5000);
+        UploadJournal journal = new UploadJournal(dir.resolve("journal"));
+        journal.record(file, "photo.jpg", CHUNK_SIZE, 3);
+
+        try (var entries = Files.list(dir.resolve("journal"))) {
+            Files.writeString(entries.findFirst().orElseThrow(), "ackedChunk=x");
+        }
+        assertEquals(0, journal.resumePoint(file, "photo.jpg", CHUNK_SIZE));
+    }
+
+    @Test
+    public void fullyAckedUploadCompletesWithoutSending() throws Exception {
+        File file = file("photo.jpg", 3 * CHUNK_SIZE);
+        UploadJournal journal = new UploadJournal(dir.resolve("journal"));
+        journal.record(file, "photo.jpg", CHUNK_SIZE, 3);
+
+        List<File> completed = new ArrayList<>();
+        FileUploader.setListener((fullName, uploaded) -> completed.add(uploaded));
+        UploadScheduler scheduler = new UploadScheduler(CHUNK_SIZE, 1, 2);
+        try {
+            scheduler.setJournal(journal);
+            scheduler.submit(file, "photo.jpg", ChunkSourceType.POSITIONAL_READ);
+
+            assertEquals(List.of(file), completed);
+
+            UploadMetrics metrics = scheduler.getMetrics();
+            assertEquals(1, metrics.getCompletedUploads());
+            assertEquals(0, metrics.getChunksSent());
+            assertEquals(0, metrics.getActiveUploads());
+            assertEquals(0, journal.resumePoint(file, "photo.jpg", CHUNK_SIZE));
+        } finally {
+            scheduler.shutdown();
+            FileUploader.setListener(null);
+        }
+    }
+
+    private File file(String name, int size) throws Exception {
+        Path path = dir.resolve(name);
+        Files.write(path, new byte[size]);
+        return path.toFile();
+    }
+}
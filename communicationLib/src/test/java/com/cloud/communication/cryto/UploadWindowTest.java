@@ -0,0 +1,71 @@
+package com.cloud.communication.cryto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class UploadWindowTest {
+
+    @Test
+    public void resumedWindowStartsAfterAckedChunks() {
+        UploadWindow window = new UploadWindow(10, 4, 3);
+
+        assertEquals(3, window.contiguousAcked());
+        assertFalse(window.isComplete());
+        assertEquals(4, window.next(0));
+        assertEquals(5, window.next(0));
+        assertEquals(6, window.next(0));
+        assertEquals(7, window.next(0));
+        assertNull(window.next(0)); // Window full
+    }
+
+    @Test
+    public void resumePointAtOrPastTotalIsComplete() {
+        for (int resumed : new int[]{5, 9}) {
+            UploadWindow window = new UploadWindow(5, 4, resumed);
+
+            assertTrue(window.isComplete());
+            assertEquals(5, window.contiguousAcked());
+            assertFalse(window.canSend());
+            assertNull(window.next(0));
+        }
+    }
+
+    @Test
+    public void outOfOrderAcksResendNothing() {
+        UploadWindow window = new UploadWindow(6, 4);
+        for (int i = 0; i < 4; i++) {
+            window.next(0);
+        }
+
+        assertTrue(window.ack(4));
+        assertTrue(window.ack(3));
+        assertTrue(window.ack(2));
+        assertFalse(window.ack(2)); // Duplicate
+        assertEquals(0, window.contiguousAcked());
+        assertEquals(List.of(), window.expired(1, 10));
+
+        assertTrue(window.ack(1));
+        assertEquals(4, window.contiguousAcked());
+    }
+
+    @Test
+    public void failedAndExpiredChunksAreResent() {
+        UploadWindow window = new UploadWindow(3, 2);
+        window.next(0);
+        window.next(0);
+
+        assertTrue(window.failed(1, 5));
+        assertEquals(2, window.attempts(1));
+        assertEquals(List.of(2), window.expired(10, 10));
+        assertEquals(2, window.attempts(2));
+
+        window.ack(1);
+        assertFalse(window.failed(1, 20)); // Acked meanwhile
+    }
+}
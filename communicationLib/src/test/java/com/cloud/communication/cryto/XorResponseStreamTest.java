@@ -0,0 +1,72 @@
+package com.cloud.communication.cryto;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.cloud.communication.cryto.encryption.XorEncryption;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class XorResponseStreamTest {
+
+    private static final byte[] KEY = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void decryptsEveryPaddingLength() throws Exception {
+        // 0, 2 and 1 padding chars, and a short body
+        for (int paramLength : new int[]{1, 2, 3, 0}) {
+            byte[] plain = response(paramLength);
+            byte[] body = Base64.getEncoder().encode(XorEncryption.encryptXorAB(KEY, plain));
+            assertArrayEquals(plain, read(body, body.length), "param of " + paramLength + " bytes");
+        }
+    }
+
+    @Test
+    public void decryptsUnpaddedAndUnknownLengthBodies() throws Exception {
+        for (int paramLength = 0; paramLength < 3; paramLength++) {
+            byte[] plain = response(paramLength);
+            byte[] encrypted = XorEncryption.encryptXorAB(KEY, plain);
+            byte[] unpadded = Base64.getEncoder().withoutPadding().encode(encrypted);
+            assertArrayEquals(plain, read(unpadded, unpadded.length));
+            assertArrayEquals(plain, read(Base64.getEncoder().encode(encrypted), -1));
+        }
+    }
+
+    @Test
+    public void decryptsWhileTheBodyIsRead() throws Exception {
+        byte[] plain = response(1024 * 1024 + 1);
+        byte[] body = Base64.getEncoder().encode(XorEncryption.encryptXorAB(KEY, plain));
+        ByteArrayInputStream source = new ByteArrayInputStream(body);
+
+        try (ParamReader reader = new ParamReader(XorResponseStream.open(source, body.length, KEY))) {
+            assertEquals(Command.GetFile.getId(), reader.readCommandId());
+            assertEquals(1024 * 1024 + 1, reader.nextParam());
+            assertTrue(source.available() > body.length / 2);
+            assertEquals(1, reader.readParam()[1024 * 1024]);
+        }
+    }
+
+    // GetFile response with one param of the given length, filled with 1s
+    private static byte[] response(int paramLength) {
+        ByteBuffer plain = ByteBuffer.allocate(8 + paramLength).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(Command.GetFile.getId()).putInt(paramLength);
+        while (plain.hasRemaining()) {
+            plain.put((byte) 1);
+        }
+        return plain.array();
+    }
+
+    private static byte[] read(byte[] body, long contentLength) throws Exception {
+        try (InputStream in = XorResponseStream.open(new ByteArrayInputStream(body), contentLength, KEY)) {
+            return in.readAllBytes();
+        }
+    }
+}
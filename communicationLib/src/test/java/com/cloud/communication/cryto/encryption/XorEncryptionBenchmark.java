@@ -0,0 +1,121 @@
+package com.cloud.communication.cryto.encryption;
+
+import static com.cloud.communication.cryto.ConversionUtils.resizeBuffers;
+import static com.cloud.communication.cryto.ConversionUtils.toByteArray;
+import static com.cloud.communication.cryto.ConversionUtils.toIntArray;
+import static com.cloud.communication.cryto.ConversionUtils.toLongArray;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Cost of xorAB on a 1 MB chunk with the previous long[]/int[] conversions and with the
+ * in-place ByteBuffer version, on a copy and in place. Run with main().
+ */
+public class XorEncryptionBenchmark {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 500;
+
+    public static void main(String[] args) {
+        byte[] key = new byte[24];
+        byte[] chunk = new byte[CHUNK_SIZE];
+        Random random = new Random(42);
+        random.nextBytes(key);
+        random.nextBytes(chunk);
+
+        if (!Arrays.equals(legacyEncrypt(key, chunk), XorEncryption.encryptXorAB(key, chunk))) {
+            throw new AssertionError("Implementations differ");
+        }
+
+        ByteBuffer inPlace = ByteBuffer.wrap(chunk.clone());
+        System.out.printf("legacy:   %.1f us/chunk%n", measure(() -> legacyEncrypt(key, chunk).length));
+        System.out.printf("copy:     %.1f us/chunk%n", measure(() -> XorEncryption.encryptXorAB(key, chunk).length));
+        System.out.printf("in place: %.1f us/chunk%n", measure(() -> {
+            XorEncryption.xorAB(key, inPlace);
+            return inPlace.remaining();
+        }));
+    }
+
+    // The previous implementation, kept for comparison
+    private static byte[] legacyEncrypt(byte[] key, byte[] data) {
+        byte[] tmpKey = Arrays.copyOf(key, key.length);
+        int dl = data.length;
+        long[] dt = toLongArray(resizeBuffers(data, ((dl + 3) / 4) * 4));
+        if (tmpKey.length < 4) {
+            tmpKey = resizeBuffers(tmpKey, 4);
+        }
+        long[] k = toLongArray(tmpKey);
+        k[0] = k[0] ^ dl;
+        tmpKey = toByteArray(k);
+
+        long[] target = new long[dt.length];
+        for (int i = 0; i < dt.length; i++) {
+            int p = i % k.length;
+            if (p == 0) {
+                tmpKey = legacyHash(tmpKey);
+                k = toLongArray(tmpKey);
+            }
+            target[i] = dt[i] ^ k[p];
+        }
+        return Arrays.copyOf(toByteArray(target), dl);
+    }
+
+    private static byte[] legacyHash(byte[] input) {
+        int bl = input.length;
+        int[] data = toIntArray(resizeBuffers(input, ((bl + 31) / 32) * 32));
+        int p0 = 0b01010101_01010101_01010101_01010101;
+        int p1 = 0b00110011_00110011_00110011_00110011;
+        int p2 = 0b00100100_10010010_00100100_10010010;
+        int p3 = 0b00011100_01110001_11000111_00011100;
+        int p4 = ~p0;
+        int p5 = ~p1;
+        int p6 = ~p2;
+        int p7 = ~p3;
+
+        int x = bl ^ 0x55555555;
+        x = x ^ (x << (1 + bl % 30));
+        x = x ^ 0x55555555;
+        x = x ^ (x >> (1 + bl % 29));
+
+        for (int i = 0; i < data.length; i += 8) {
+            x = x ^ (data[i] ^ data[i + 1] ^ data[i + 2] ^ data[i + 3] ^ data[i + 4] ^ data[i + 5] ^ data[i + 6] ^ data[i + 7]);
+            x = x ^ 0x55555555;
+            x = x ^ (x << (1 + x % 28));
+            x = x ^ 0x55555555;
+            x = x ^ (x >> (1 + x % 29));
+            x = x ^ 0x55555555;
+            x = x ^ (x << (1 + x % 30));
+
+            p0 = p0 ^ data[i] ^ x;
+            p1 = p1 ^ data[i + 1] ^ x;
+            p2 = p2 ^ data[i + 2] ^ x;
+            p3 = p3 ^ data[i + 3] ^ x;
+            p4 = p4 ^ data[i + 4] ^ x;
+            p5 = p5 ^ data[i + 5] ^ x;
+            p6 = p6 ^ data[i + 6] ^ x;
+            p7 = p7 ^ data[i + 7] ^ x;
+        }
+        return toByteArray(new int[]{p0, p1, p2, p3, p4, p5, p6, p7});
+    }
+
+    private static double measure(Encryption encryption) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += encryption.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += encryption.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 0) System.out.println();
+        return elapsed / 1000.0 / ITERATIONS;
+    }
+
+    private interface Encryption {
+        int run();
+    }
+}
@@ -0,0 +1,109 @@
+package com.cloud.communication.cryto.encryption;
+
+import static com.cloud.communication.cryto.ConversionUtils.byteArrayToHex;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.cloud.communication.cryto.HashUtils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Golden vectors recorded with the previous long[]-based implementation, which the clouds
+ * in the field still use, so the output must not change by a single byte.
+ */
+public class XorEncryptionTest {
+
+    @Test
+    public void fastHash256MatchesGoldenVectors() {
+        assertEquals("5555555533333333922492241cc7711caaaaaaaacccccccc6ddb6ddbe3388ee3", byteArrayToHex(HashUtils.fastHash256(bytes(0, 1))));
+        assertEquals("ef1252159174347330639564be80765c08edadea6e8bcb8ccf9c6a9b417f89a3", byteArrayToHex(HashUtils.fastHash256(bytes(1, 1))));
+        assertEquals("2d729a5d3f9078bf1a1b4534087c22883a9d75b2d07f9750f5d4cafb07b3ad47", byteArrayToHex(HashUtils.fastHash256(bytes(33, 1))));
+        assertEquals("27646de57551791250da449942bd2325705c741f9abe96fdbfd50b160db26caa", byteArrayToHex(HashUtils.fastHash256(bytes(100, 1))));
+    }
+
+    @Test
+    public void encryptXorABMatchesGoldenVectors() {
+        assertEquals("", xor(0, 0));
+        assertEquals("32", xor(0, 1));
+        assertEquals("cf67aa4109", xor(2, 5));
+        assertEquals("43a587309f070a54ba942fdfa8eb50639a020f5970e8e5bb557bc0d067649f", xor(5, 31));
+        assertEquals("7729bf29bdc355cb99700fde37f3f4e6819e2750e7f8493646eff0c1e86c2bf9", xor(40, 32));
+        assertEquals("24fa9b7f639cf519c28b6cee6c0897d6da654460bc032a060c24dc9f3e3b8323a6", xor(24, 33));
+        assertEquals("346dcd7d360ba31b971c3aec399fc1d48ff21262e9947c0459b38a9d6bacd521689fe4130c9fec130c9fd4f32cffccf32cffc4f32cffccf33dcf9bbd41736739f42d8dbdf64be3db575c7a2cf9df81144fb252a229d43cc499f3caddab6c9561a85fa453",
+                xor(24, 100));
+    }
+
+    @Test
+    public void encryptXorABMatchesGoldenVectorOn1MB() {
+        byte[] encrypted = XorEncryption.encryptXorAB(bytes(24, 5), bytes(1024 * 1024 + 3, 4));
+        assertEquals("0d1699cb83581104253724e69c99ce9ae932fc3676e83133d54c3923ae9f920b", byteArrayToHex(HashUtils.hash256(encrypted)));
+    }
+
+    @Test
+    public void decryptXorABRestoresData() {
+        byte[] data = bytes(1000, 6);
+        byte[] key = bytes(24, 7);
+        assertArrayEquals(data, XorEncryption.decryptXorAB(key, XorEncryption.encryptXorAB(key, data)));
+    }
+
+    @Test
+    public void xorABInPlaceMatchesArrayVersion() {
+        byte[] data = bytes(77, 8);
+        byte[] key = bytes(24, 9);
+        byte[] expected = XorEncryption.encryptXorAB(key, data);
+
+        // Big-endian buffer with the data at an offset, the bytes around it stay untouched
+        byte[] framed = new byte[data.length + 10];
+        System.arraycopy(data, 0, framed, 5, data.length);
+        ByteBuffer buffer = ByteBuffer.wrap(framed, 5, data.length).order(ByteOrder.BIG_ENDIAN);
+        XorEncryption.xorAB(key, buffer);
+
+        assertEquals(5, buffer.position());
+        byte[] actual = new byte[data.length];
+        System.arraycopy(framed, 5, actual, 0, data.length);
+        assertArrayEquals(expected, actual);
+        assertArrayEquals(new byte[5], java.util.Arrays.copyOfRange(framed, framed.length - 5, framed.length));
+    }
+
+    @Test
+    public void keyStreamInPiecesMatchesOneShot() {
+        byte[] data = bytes(1000, 10);
+        byte[] key = bytes(24, 11);
+        byte[] expected = XorEncryption.encryptXorAB(key, data);
+
+        // Pieces that start and end inside keystream blocks as well as on their boundaries
+        XorKeyStream keyStream = new XorKeyStream(key, data.length);
+        int[] pieces = {1, 31, 32, 5, 64, 3, 100, 0, 764};
+        int offset = 0;
+        for (int piece : pieces) {
+            keyStream.apply(ByteBuffer.wrap(data, offset, piece));
+            offset += piece;
+        }
+        assertEquals(data.length, offset);
+        assertArrayEquals(expected, data);
+    }
+
+    @Test
+    public void keyStreamRejectsDataPastItsLength() {
+        XorKeyStream keyStream = new XorKeyStream(bytes(24, 12), 40);
+        keyStream.apply(ByteBuffer.allocate(32));
+        assertThrows(IllegalArgumentException.class, () -> keyStream.apply(ByteBuffer.allocate(9)));
+    }
+
+    private static String xor(int keyLength, int dataLength) {
+        return byteArrayToHex(XorEncryption.encryptXorAB(bytes(keyLength, 2), bytes(dataLength, 3)));
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + seed * 17 + 7);
+        }
+        return bytes;
+    }
+}